@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import au.com.rma.micronaut.jms.annotation.JmsClient;
+import au.com.rma.micronaut.jms.annotation.JmsDestination;
+import au.com.rma.micronaut.jms.annotation.JmsProperty;
+import au.com.rma.micronaut.jms.annotation.JmsReplyDestination;
+import io.micronaut.messaging.annotation.Body;
+
+@JmsClient(BrokerState.CONNECTION)
+public interface BenchClient {
+  @JmsDestination(BrokerState.SINK_QUEUE)
+  void send(BenchPayload payload);
+
+  @JmsDestination(BrokerState.ECHO_QUEUE)
+  @JmsReplyDestination(value = BrokerState.REPLY_QUEUE, timeout = 5_000)
+  BenchPayload requestReply(BenchPayload payload);
+
+  @JmsDestination(BrokerState.SINK_QUEUE)
+  @JmsProperty(name = "type", value = "bench")
+  void sendWithProperties(@Body BenchPayload payload, @JmsProperty(name = "priority") Integer priority);
+}
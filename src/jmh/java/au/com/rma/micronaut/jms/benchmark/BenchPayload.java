@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchPayload {
+  private String id;
+  private String description;
+  private List<Long> values = new ArrayList<>();
+
+  public static BenchPayload create(int size) {
+    BenchPayload payload = new BenchPayload();
+    payload.setId("payload-" + size);
+    payload.setDescription("A payload used by the benchmarks containing " + size + " values");
+    for (long value = 0; value < size; value++) {
+      payload.getValues().add(value);
+    }
+    return payload;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public void setDescription(String description) {
+    this.description = description;
+  }
+
+  public List<Long> getValues() {
+    return values;
+  }
+
+  public void setValues(List<Long> values) {
+    this.values = values;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import au.com.rma.micronaut.jms.aop.JmsListenerMethodPlan;
+import au.com.rma.micronaut.jms.binding.JmsClientPropertyBinder;
+import au.com.rma.micronaut.jms.binding.MessageBinderRegistry;
+import au.com.rma.micronaut.jms.conversion.ConversionHelper;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.inject.ExecutableMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.JMSProducer;
+import javax.jms.Message;
+
+/**
+ * Measures applying {@code @JmsProperty} values to an outgoing message and binding the arguments of a
+ * listener method from a received message.
+ */
+@State(Scope.Thread)
+public class BindingBenchmark {
+  private JMSContext context;
+  private JMSProducer producer;
+  private Message message;
+  private BytesMessage bytesMessage;
+  private JmsClientPropertyBinder propertyBinder;
+  private JmsClientPropertyBinder.PropertyPlan propertyPlan;
+  private Object[] parameterValues;
+  private JmsListenerMethodPlan listenerPlan;
+
+  @Setup
+  public void setup(BrokerState state) throws JMSException {
+    ApplicationContext applicationContext = state.getApplicationContext();
+    ConversionHelper conversionHelper = applicationContext.getBean(ConversionHelper.class);
+
+    context = state.getConnectionFactory().createContext();
+    producer = context.createProducer();
+    message = context.createTextMessage(conversionHelper.convertObjectToString(BenchPayload.create(10)));
+    message.setJMSPriority(4);
+    bytesMessage = (BytesMessage)conversionHelper.createMessage(context, conversionHelper.serializeBody(BenchPayload.create(10), true));
+    bytesMessage.setJMSPriority(4);
+    bytesMessage.reset();
+
+    propertyBinder = applicationContext.getBean(JmsClientPropertyBinder.class);
+    ExecutableMethod<?, ?> clientMethod = applicationContext.getBeanDefinition(BenchClient.class)
+        .findMethod("sendWithProperties", BenchPayload.class, Integer.class)
+        .orElseThrow(() -> new IllegalStateException("BenchClient.sendWithProperties not found"));
+    propertyPlan = propertyBinder.plan(clientMethod);
+    parameterValues = new Object[] { BenchPayload.create(10), 4 };
+
+    ExecutableMethod<?, ?> listenerMethod = applicationContext.getBeanDefinition(EchoListener.class)
+        .findMethod("sink", BenchPayload.class, Integer.class)
+        .orElseThrow(() -> new IllegalStateException("EchoListener.sink not found"));
+    listenerPlan = new JmsListenerMethodPlan(
+        listenerMethod, new EchoListener(), applicationContext.getBean(MessageBinderRegistry.class));
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Message clientPropertyBinding() {
+    propertyBinder.binder(propertyPlan, parameterValues).bind(producer, message);
+    return message;
+  }
+
+  @Benchmark
+  public Object listenerArgumentBinding() throws JMSException {
+    return listenerPlan.invoke(message);
+  }
+
+  @Benchmark
+  public Object listenerArgumentBindingFromBytes() throws JMSException {
+    return listenerPlan.invoke(bytesMessage);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Starts an embedded Artemis broker standing in for IBM MQ and a Micronaut context with the
+ * {@link BenchClient} and {@link EchoListener} connected to it.
+ */
+@State(Scope.Benchmark)
+public class BrokerState {
+  public static final String CONNECTION = "bench";
+  public static final String SINK_QUEUE = "BENCH.QUEUE.SINK";
+  public static final String ECHO_QUEUE = "BENCH.QUEUE.ECHO";
+  public static final String REPLY_QUEUE = "BENCH.QUEUE.REPLY";
+
+  private EmbeddedActiveMQ broker;
+  private ActiveMQConnectionFactory connectionFactory;
+  private ApplicationContext applicationContext;
+
+  @Setup(Level.Trial)
+  public void start() throws Exception {
+    broker = new EmbeddedActiveMQ();
+    broker.setConfiguration(new ConfigurationImpl()
+        .setPersistenceEnabled(false)
+        .setSecurityEnabled(false)
+        .addAcceptorConfiguration("in-vm", "vm://0"));
+    broker.start();
+
+    connectionFactory = new ActiveMQConnectionFactory("vm://0");
+    applicationContext = ApplicationContext.build().build();
+    applicationContext.registerSingleton(
+        NamedConnectionFactory.class,
+        new NamedConnectionFactory(CONNECTION, connectionFactory),
+        Qualifiers.byName(CONNECTION));
+    applicationContext.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() throws Exception {
+    applicationContext.close();
+    connectionFactory.close();
+    broker.stop();
+  }
+
+  public ActiveMQConnectionFactory getConnectionFactory() {
+    return connectionFactory;
+  }
+
+  public ApplicationContext getApplicationContext() {
+    return applicationContext;
+  }
+}
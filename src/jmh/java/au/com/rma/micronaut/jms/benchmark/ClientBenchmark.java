@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures complete {@link au.com.rma.micronaut.jms.aop.JmsClientInterceptor} calls against the embedded broker,
+ * both fire-and-forget sends and request/reply round trips through the {@link EchoListener}.
+ */
+@State(Scope.Thread)
+public class ClientBenchmark {
+  private BenchClient client;
+  private BenchPayload payload;
+
+  @Setup
+  public void setup(BrokerState state) {
+    client = state.getApplicationContext().getBean(BenchClient.class);
+    payload = BenchPayload.create(10);
+  }
+
+  @Benchmark
+  public void send() {
+    client.send(payload);
+  }
+
+  @Benchmark
+  public BenchPayload requestReply() {
+    return client.requestReply(payload);
+  }
+}
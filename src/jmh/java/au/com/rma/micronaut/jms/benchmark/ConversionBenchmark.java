@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.benchmark;
+
+import au.com.rma.micronaut.jms.conversion.ConversionHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.convert.ConversionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the body conversion used by clients and listeners without any JMS involvement.
+ */
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+  @Param({"10", "10000"})
+  private int size;
+
+  private ConversionHelper conversionHelper;
+  private BenchPayload payload;
+  private String json;
+
+  @Setup
+  public void setup() {
+    conversionHelper = new ConversionHelper(ConversionService.SHARED, new ObjectMapper());
+    payload = BenchPayload.create(size);
+    json = conversionHelper.convertObjectToString(payload);
+  }
+
+  @Benchmark
+  public String convertObjectToString() {
+    return conversionHelper.convertObjectToString(payload);
+  }
+
+  @Benchmark
+  public Object convertMessageToObject() {
+    return conversionHelper.convertMessageToObject(json, BenchPayload.class);
+  }
+
+  @Benchmark
+  public Object serializeBodyToBytes() {
+    return conversionHelper.serializeBody(payload, true);
+  }
+}
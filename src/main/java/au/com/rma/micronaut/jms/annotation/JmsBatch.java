@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Send or receive messages in batches, each batch uses a transacted session and is committed once.
+ *
+ * On a {@link JmsClient} method, methods returning {@code void} return as soon as the message has been
+ * added to the batch, methods returning a {@link java.util.concurrent.CompletionStage} or reactive type
+ * complete once the batch has been committed. Batched methods can not have a {@link JmsReplyDestination}.
+ *
+ * On a {@link JmsListener} method, the method must accept a single {@link java.util.List} of message
+ * bodies (or {@link javax.jms.Message}s) and the whole batch is rolled back if the method throws.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JmsBatch {
+  /**
+   * @return The maximum number of messages committed together
+   */
+  int maxMessages() default 100;
+
+  /**
+   * @return The maximum time in milliseconds a message waits for the batch to fill before it is committed
+   */
+  long maxDelay() default 100;
+
+  /**
+   * @return The number of times a {@link JmsClient} batch that failed to commit is sent again before its sends fail
+   */
+  int retries() default 0;
+}
@@ -24,6 +24,7 @@ package au.com.rma.micronaut.jms.annotation;
 
 import au.com.rma.micronaut.jms.aop.JmsClientInterceptor;
 import io.micronaut.aop.Introduction;
+import io.micronaut.context.annotation.Executable;
 import io.micronaut.context.annotation.Type;
 import io.micronaut.retry.annotation.Recoverable;
 
@@ -36,6 +37,7 @@ import java.lang.annotation.*;
 @Documented
 @Recoverable
 @Introduction
+@Executable
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 @Type(JmsClientInterceptor.class)
@@ -42,4 +42,46 @@ public @interface JmsListener {
    * @return The selector to use for JMS messages
    */
   String selector() default "";
+
+  /**
+   * The number of consumers receiving messages from each destination, either a fixed number eg. {@code "4"}
+   * or a range eg. {@code "2-8"}. When a range is used consumers are added while the destination has a
+   * backlog and removed again once they become idle.
+   *
+   * @return The concurrency of the listener
+   */
+  String concurrency() default "1";
+
+  /**
+   * @return How messages are delivered to the listener
+   */
+  JmsDispatchMode dispatch() default JmsDispatchMode.PROVIDER;
+
+  /**
+   * The name of the {@link java.util.concurrent.ExecutorService} bean running the consumers of a
+   * {@link JmsDispatchMode#PULL} listener. When empty each listener uses virtual threads on JDKs that support
+   * them, or a pool with a thread per consumer. Other dispatch modes reject an executor, as their consumers are
+   * run by the listener itself.
+   *
+   * @return The name of the executor
+   */
+  String executor() default "";
+
+  /**
+   * The maximum number of messages being processed at once by each consumer of a listener method returning a
+   * {@link java.util.concurrent.CompletionStage} or reactive type. No more messages are received until the
+   * processing of earlier messages completes.
+   *
+   * @return The maximum number of messages in flight per consumer
+   */
+  int maxInFlight() default 16;
+
+  /**
+   * The number of messages received ahead of a {@link JmsDispatchMode#PULL} listener. Each consumer receives up
+   * to this many messages while a worker thread processes them and acknowledges them once all have been processed.
+   * For any dispatch mode a value above zero also lets the MQ client read non-persistent messages ahead.
+   *
+   * @return The prefetch of each consumer, 0 to receive one message at a time
+   */
+  int prefetch() default 0;
 }
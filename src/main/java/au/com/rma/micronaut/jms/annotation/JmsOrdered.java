@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.annotation;
+
+import au.com.rma.micronaut.jms.jms.MessageKeyExtractor;
+
+import java.lang.annotation.*;
+
+/**
+ * Process the messages of a {@link JmsListener} method in parallel while keeping the order of messages with the
+ * same key. A single consumer receives the messages and hands each one to one of {@link #lanes()} single threaded
+ * lanes chosen by its key, so messages with the same key are processed one at a time in the order they arrived.
+ *
+ * Messages are acknowledged once every message received in the same window has been processed. If any of them
+ * fails the rest of the window is skipped and the whole window is redelivered, so messages can be processed more
+ * than once.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JmsOrdered {
+  /**
+   * @return The number of lanes, defaults to the number of available processors
+   */
+  int lanes() default 0;
+
+  /**
+   * @return The message property holding the key, used when no {@link #keyExtractor()} is given
+   */
+  String property() default "JMSXGroupID";
+
+  /**
+   * @return A bean deriving the key from the message eg. from its body
+   */
+  Class<? extends MessageKeyExtractor> keyExtractor() default MessageKeyExtractor.class;
+
+  /**
+   * @return The maximum number of messages received before waiting for them to be processed and acknowledged
+   */
+  int window() default 100;
+}
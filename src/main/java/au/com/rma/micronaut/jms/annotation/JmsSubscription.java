@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Subscribe a {@link JmsListener} method to a topic destination using a named subscription.
+ *
+ * A shared subscription spreads the publications of the topic over every consumer of the subscription, across all
+ * the application instances using the same name, instead of every consumer receiving every publication. A durable
+ * subscription keeps publications while no consumer is connected. An unshared durable subscription also needs the
+ * {@code client-id} of the connection to be set and only allows a single consumer.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JmsSubscription {
+  /**
+   * @return The subscription name, defaults to the bean and method name
+   */
+  String value() default "";
+
+  /**
+   * @return {@code true} to keep publications while there are no consumers
+   */
+  boolean durable() default false;
+
+  /**
+   * @return {@code true} to share the publications between the consumers of the subscription
+   */
+  boolean shared() default false;
+}
@@ -25,6 +25,8 @@ package au.com.rma.micronaut.jms.aop;
 import io.micronaut.messaging.exceptions.MessagingClientException;
 
 public class JmsClientException extends MessagingClientException {
+  private static final long serialVersionUID = 1L;
+
   public JmsClientException(String message) {
     super(message);
   }
@@ -23,29 +23,37 @@
 package au.com.rma.micronaut.jms.aop;
 
 import au.com.rma.micronaut.jms.annotation.JmsClient;
-import au.com.rma.micronaut.jms.annotation.JmsDestination;
-import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
-import au.com.rma.micronaut.jms.annotation.JmsReplyDestination;
 import au.com.rma.micronaut.jms.binding.JmsClientPropertyBinder;
 import au.com.rma.micronaut.jms.conversion.ConversionHelper;
+import au.com.rma.micronaut.jms.jms.JmsBatchSender;
 import au.com.rma.micronaut.jms.jms.JmsHelper;
+import au.com.rma.micronaut.jms.jms.JmsMessageGroups;
+import au.com.rma.micronaut.jms.jms.JmsReplyCorrelator;
+import au.com.rma.micronaut.jms.metrics.JmsMetrics;
 import io.micronaut.aop.MethodInterceptor;
 import io.micronaut.aop.MethodInvocationContext;
-import io.micronaut.core.annotation.AnnotationMetadata;
-import io.micronaut.core.annotation.AnnotationValue;
-import io.micronaut.core.bind.annotation.Bindable;
-import io.micronaut.core.type.Argument;
-import io.micronaut.core.type.ReturnType;
+import io.micronaut.core.async.publisher.Publishers;
 import io.micronaut.inject.ExecutableMethod;
-import io.micronaut.messaging.annotation.Body;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.jms.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Singleton
@@ -55,14 +63,25 @@ public class JmsClientInterceptor implements MethodInterceptor<Object, Object> {
   private final ConversionHelper conversionHelper;
   private final JmsHelper jmsHelper;
   private final JmsClientPropertyBinder propertyBinder;
+  private final JmsMetrics metrics;
+  private final ExecutorService executorService;
+  private final TaskScheduler taskScheduler;
+  private final Map<ExecutableMethod<?, ?>, JmsClientMethodPlan> plans = new ConcurrentHashMap<>();
+  private final Map<List<Object>, JmsClientMethodPlan> preparedPlans = new ConcurrentHashMap<>();
 
   public JmsClientInterceptor(
       ConversionHelper conversionHelper,
       JmsHelper jmsHelper,
-      JmsClientPropertyBinder propertyBinder) {
+      JmsClientPropertyBinder propertyBinder,
+      JmsMetrics metrics,
+      @Named(TaskExecutors.IO) ExecutorService executorService,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler taskScheduler) {
     this.conversionHelper = conversionHelper;
     this.jmsHelper = jmsHelper;
     this.propertyBinder = propertyBinder;
+    this.metrics = metrics;
+    this.executorService = executorService;
+    this.taskScheduler = taskScheduler;
   }
 
   @Override
@@ -71,93 +90,247 @@ public class JmsClientInterceptor implements MethodInterceptor<Object, Object> {
       return context.proceed();
     }
 
-    ExecutableMethod<Object, Object> method = context.getExecutableMethod();
-    logger.trace("Intercepting {} with parameters {}", context.getMethodName(), context.getArguments());
-
-    String connectionName = getConnectionName(method);
-    AnnotationValue<JmsDestination> destinationAnnotation = getDestinationAnnotation(method);
-    String destinationName = destinationAnnotation.stringValue()
-        .orElseThrow(() -> new IllegalArgumentException("@JmsDestination must contain the queue to send on method: " + method));
-    JmsDestinationType destinationType = destinationAnnotation.enumValue("type", JmsDestinationType.class)
-        .orElse(JmsDestinationType.QUEUE);
-    Optional<AnnotationValue<JmsReplyDestination>> replyToAnnotation = getReplyToAnnotation(method);
+    if (logger.isTraceEnabled()) {
+      logger.trace("Intercepting {} with parameters {}", context.getMethodName(), context.getArguments());
+    }
+    JmsClientMethodPlan plan = plans.computeIfAbsent(context.getExecutableMethod(), this::findPlan);
 
-    String message = getBody(context);
+    Object[] parameterValues = context.getParameterValues();
+    if (plan.isStreaming()) {
+      return sendStream(plan, parameterValues);
+    }
+    Object body = conversionHelper.compressBody(
+        conversionHelper.serializeBody(parameterValues[plan.getBodyIndex()], plan.getContentType(), plan.isBytesMessages()),
+        plan.getCompression());
+    JmsClientPropertyBinder.JmsClientBinder binder = propertyBinder.binder(plan.getPropertyPlan(), parameterValues);
 
-    JmsClientPropertyBinder.JmsClientBinder binder = propertyBinder.binder(context);
-    ReturnType<?> returnType = method.getReturnType();
+    if (plan.isAsync() && !plan.isCompletionStage()) {
+      // a reactive type only sends once it is subscribed to, and sends again for every subscription
+      return Publishers.convertPublisher(
+          Publishers.fromCompletableFuture(() -> respond(plan, send(plan, body, binder))), plan.getReturnType());
+    }
+    CompletableFuture<Message> reply = send(plan, body, binder);
+    if (plan.isAsync()) {
+      return respond(plan, reply);
+    }
+    if (plan.isBatch()) {
+      return null;
+    }
+    Message replyMessage = await(reply);
+    return replyMessage == null ? null : convertReply(replyMessage, plan.getResponseType());
+  }
 
-    AtomicReference<Object> response = new AtomicReference<>();
-    jmsHelper.withClient(connectionName, ctx -> {
-      JMSProducer producer = ctx.createProducer();
+  /**
+   * Send the message of a call.
+   *
+   * @return Completes once the message is sent, with the reply for methods with a reply destination
+   */
+  private CompletableFuture<Message> send(JmsClientMethodPlan plan, Object body, JmsClientPropertyBinder.JmsClientBinder binder) {
+    long start = System.nanoTime();
+    if (plan.isBatch()) {
+      JmsBatchSender batchSender = jmsHelper.getBatchSender(
+          plan.getConnectionName(), plan.getBatchMaxMessages(), plan.getBatchMaxDelay(), plan.getBatchRetries());
+      CompletableFuture<Void> sent = batchSender.send(ctx -> {
+        JMSProducer producer = ctx.createProducer();
 
-      TextMessage textMessage = ctx.createTextMessage(message);
-      Destination destination = jmsHelper.destinationFor(destinationName, destinationType, ctx);
-      Destination replyToDestination = replyToAnnotation.map(annotation -> jmsHelper.destinationFor(
-          annotation.stringValue().orElseThrow(() -> new JmsClientException("@JmsReplyDestination is missing a destination")),
-          annotation.enumValue(JmsDestinationType.class).orElse(JmsDestinationType.QUEUE),
-          ctx)).orElse(null);
+        Message message = conversionHelper.createMessage(ctx, body, plan.getContentType());
+        message.setJMSCorrelationID(UUID.randomUUID().toString());
+        binder.bind(producer, message);
 
-      if (replyToAnnotation.isPresent()) {
-        textMessage.setJMSReplyTo(replyToDestination);
-      }
-      textMessage.setJMSCorrelationID(UUID.randomUUID().toString());
-      binder.bind(producer, textMessage);
+        producer.send(jmsHelper.destinationFor(plan.getConnectionName(), plan.getDestinationName(), plan.getDestinationType(), ctx), message);
+      }, !plan.isAsync());
+      sent.whenComplete((ignored, throwable) -> recordSend(plan, start, throwable == null));
+      return sent.thenApply(ignored -> null);
+    }
 
-      producer.send(destination, textMessage);
+    JmsReplyCorrelator replyCorrelator = plan.isReply()
+        ? jmsHelper.getReplyCorrelator(plan.getConnectionName(), plan.getReplyDestinationName(), plan.getReplyDestinationType())
+        : null;
 
-      if (replyToAnnotation.isPresent()) {
-        String jmsCorrelationID = textMessage.getJMSCorrelationID();
-        JMSConsumer consumer = ctx.createConsumer(replyToDestination, "JMSCorrelationID='" + jmsCorrelationID + "'");
-        Message reply = consumer.receive(replyToAnnotation.get().longValue("timeout").orElse(5_000));
+    AtomicReference<CompletableFuture<Message>> reply = new AtomicReference<>();
+    if (plan.isAsync()) {
+      // the context stays leased until the queue manager confirms the send, its completion listener belongs to it
+      AtomicReference<Message> sentMessage = new AtomicReference<>();
+      CompletableFuture<Void> sent = jmsHelper.withAsyncClient(plan.getConnectionName(), ctx -> {
+        JMSProducer producer = ctx.createProducer();
+        Destination destination = jmsHelper.destinationFor(plan.getConnectionName(), plan.getDestinationName(), plan.getDestinationType(), ctx);
+        Message message = createMessage(ctx, producer, plan, body, binder, replyCorrelator, reply);
+        sentMessage.set(message);
 
-        if (reply == null) {
-          throw new JmsClientException("Timeout receiving response for JMSCorrelationID=" + jmsCorrelationID);
+        CompletableFuture<Void> confirmed = sendAsync(producer, plan.getSendTimeout());
+        try {
+          producer.send(destination, message);
+        } catch (JMSRuntimeException exception) {
+          confirmed.completeExceptionally(exception);
         }
-        String replyText = reply.getBody(String.class);
-        response.set(conversionHelper.convertMessageToObject(replyText, returnType.getType()));
+        return confirmed;
+      });
+      sent.whenComplete((ignored, throwable) -> {
+        recordSend(plan, start, throwable == null);
+        if (throwable != null && reply.get() != null) {
+          cancelReply(replyCorrelator, sentMessage.get());
+        }
+      });
+      return sent.thenCompose(ignored -> reply.get() == null
+          ? CompletableFuture.<Message>completedFuture(null)
+          : reply.get());
+    }
+
+    jmsHelper.withClient(plan.getConnectionName(), ctx -> {
+      JMSProducer producer = ctx.createProducer();
+      Destination destination = jmsHelper.destinationFor(plan.getConnectionName(), plan.getDestinationName(), plan.getDestinationType(), ctx);
+      Message message = createMessage(ctx, producer, plan, body, binder, replyCorrelator, reply);
+
+      try {
+        producer.send(destination, message);
+      } catch (JMSRuntimeException exception) {
+        recordSend(plan, start, false);
+        cancelReply(replyCorrelator, message);
+        throw exception;
       }
+      recordSend(plan, start, true);
     });
-    return response.get();
+    return reply.get() == null ? CompletableFuture.completedFuture(null) : reply.get();
   }
 
-  private String getConnectionName(ExecutableMethod<Object, Object> method) {
-    return method.findAnnotation(JmsClient.class)
-        .orElseThrow(() -> new IllegalArgumentException("No @JmsClient annotation on method: " + method))
-        .stringValue()
-        .orElseThrow(() -> new IllegalArgumentException("@JmsClient must contain a connection name on method: " + method));
+  /**
+   * Create the message of a call, registering for its reply with the correlator of methods with a reply destination.
+   */
+  private Message createMessage(JMSContext ctx, JMSProducer producer, JmsClientMethodPlan plan, Object body,
+      JmsClientPropertyBinder.JmsClientBinder binder, JmsReplyCorrelator replyCorrelator,
+      AtomicReference<CompletableFuture<Message>> reply) throws JMSException {
+    Message message = conversionHelper.createMessage(ctx, body, plan.getContentType());
+    message.setJMSCorrelationID(replyCorrelator == null ? UUID.randomUUID().toString() : replyCorrelator.newCorrelationId());
+    binder.bind(producer, message);
+
+    if (replyCorrelator != null) {
+      message.setJMSReplyTo(replyCorrelator.getReplyDestination());
+      reply.set(replyCorrelator.register(message.getJMSCorrelationID(), plan.getReplyTimeout()));
+    }
+    return message;
   }
 
-  private AnnotationValue<JmsDestination> getDestinationAnnotation(ExecutableMethod<Object, Object> method) {
-    return method.findAnnotation(JmsDestination.class)
-        .orElseThrow(() -> new IllegalArgumentException("No @JmsDestination annotation on method: " + method));
+  /**
+   * Convert the reply of an asynchronous call on the IO executor rather than the MQ client thread delivering it.
+   */
+  private CompletableFuture<Object> respond(JmsClientMethodPlan plan, CompletableFuture<Message> reply) {
+    if (!plan.isReply()) {
+      return reply.thenApply(ignored -> null);
+    }
+    return reply.thenApplyAsync(replyMessage -> convertReply(replyMessage, plan.getResponseType()), executorService);
   }
 
-  private Optional<AnnotationValue<JmsReplyDestination>> getReplyToAnnotation(ExecutableMethod<Object, Object> method) {
-    return method.findAnnotation(JmsReplyDestination.class);
+  private Object sendStream(JmsClientMethodPlan plan, Object[] parameterValues) {
+    InputStream stream = (InputStream)parameterValues[plan.getBodyIndex()];
+    JmsClientPropertyBinder.JmsClientBinder binder = propertyBinder.binder(plan.getPropertyPlan(), parameterValues);
+    String correlationId = UUID.randomUUID().toString();
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      jmsHelper.withTransactedClient(plan.getConnectionName(), ctx -> {
+        JMSProducer producer = ctx.createProducer();
+        Destination destination = jmsHelper.destinationFor(plan.getConnectionName(), plan.getDestinationName(), plan.getDestinationType(), ctx);
+        try {
+          JmsMessageGroups.send(ctx, stream, plan.getStreamChunkSize(), message -> {
+            message.setJMSCorrelationID(correlationId);
+            binder.bind(producer, message);
+            producer.send(destination, message);
+          });
+        } catch (IOException exception) {
+          throw new JmsClientException("Unable to read the body of the message", exception);
+        }
+      });
+      success = true;
+    } finally {
+      recordSend(plan, start, success);
+    }
+    if (!plan.isAsync()) {
+      return null;
+    }
+    return plan.isCompletionStage()
+        ? CompletableFuture.completedFuture(null)
+        : Publishers.convertPublisher(Publishers.fromCompletableFuture(() -> CompletableFuture.completedFuture(null)), plan.getReturnType());
   }
 
-  private String getBody(MethodInvocationContext<Object, Object> context) {
-    Argument<?> bodyArgument = findBodyArgument(context.getArguments())
-        .orElseThrow(() -> new JmsClientException("No valid body argument found on method: " + context.getMethodName()));
-    Object message = context.getParameters().get(bodyArgument.getName()).getValue();
+  /**
+   * Resolve the plan of a client method before it is first called.
+   *
+   * @param method The client method
+   */
+  void prepare(ExecutableMethod<?, ?> method) {
+    findPlan(method);
+  }
+
+  /**
+   * The methods called on a client are not equal to the methods of its bean definition, so prepared plans are
+   * found by the signature of the method.
+   */
+  private JmsClientMethodPlan findPlan(ExecutableMethod<?, ?> method) {
+    return preparedPlans.computeIfAbsent(
+        Arrays.asList(method.getDeclaringType(), method.getMethodName(), Arrays.asList(method.getArgumentTypes())),
+        signature -> createPlan(method));
+  }
+
+  private JmsClientMethodPlan createPlan(ExecutableMethod<?, ?> method) {
+    JmsClientMethodPlan plan = new JmsClientMethodPlan(method, propertyBinder, jmsHelper::getConfiguration);
+    conversionHelper.prepare(method.getArguments()[plan.getBodyIndex()].getType());
+    conversionHelper.prepare(plan.getResponseType());
+    return plan;
+  }
+
+  /**
+   * Send without waiting for the queue manager, failing the send if it is not confirmed within the timeout.
+   */
+  private CompletableFuture<Void> sendAsync(JMSProducer producer, Duration timeout) {
+    CompletableFuture<Void> sent = new CompletableFuture<>();
+    ScheduledFuture<?> expiry = taskScheduler.schedule(timeout, () ->
+        sent.completeExceptionally(new JmsClientException("Timeout waiting for the queue manager to confirm the send")));
+    sent.whenComplete((ignored, throwable) -> expiry.cancel(false));
+    producer.setAsync(new CompletionListener() {
+      @Override
+      public void onCompletion(Message message) {
+        sent.complete(null);
+      }
+
+      @Override
+      public void onException(Message message, Exception exception) {
+        sent.completeExceptionally(new JmsClientException("Failed to send message", exception));
+      }
+    });
+    return sent;
+  }
 
-    return conversionHelper.convertObjectToString(message);
+  private void recordSend(JmsClientMethodPlan plan, long start, boolean success) {
+    metrics.send(plan.getConnectionName(), plan.getDestinationName(), System.nanoTime() - start, success);
   }
 
-  private Optional<Argument<?>> findBodyArgument(Argument[] arguments) {
-    if (arguments.length == 1) {
-      return Optional.of(arguments[0]);
+  private void cancelReply(JmsReplyCorrelator replyCorrelator, Message message) {
+    if (replyCorrelator == null) {
+      return;
+    }
+    try {
+      replyCorrelator.cancel(message.getJMSCorrelationID());
+    } catch (JMSException exception) {
+      logger.warn("Unable to cancel reply", exception);
     }
-    return Optional.ofNullable(Arrays.stream(arguments)
-        .filter(this::isBodyArgument)
-        .findFirst()
-        .orElse(null));
   }
 
-  private boolean isBodyArgument(Argument argument) {
-    AnnotationMetadata metadata = argument.getAnnotationMetadata();
+  private Object convertReply(Message replyMessage, Class<?> responseType) {
+    try {
+      return conversionHelper.readBody(replyMessage, responseType);
+    } catch (JMSException exception) {
+      throw new JmsClientException("Unable to read the body of the response", exception);
+    }
+  }
 
-    return metadata.hasAnnotation(Body.class) || metadata.hasAnnotation(Bindable.class);
+  private <T> T await(CompletableFuture<T> response) {
+    try {
+      return response.join();
+    } catch (CompletionException exception) {
+      if (exception.getCause() instanceof JmsClientException) {
+        throw (JmsClientException)exception.getCause();
+      }
+      throw new JmsClientException("Failed receiving response", exception.getCause());
+    }
   }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.aop;
+
+import au.com.rma.micronaut.jms.annotation.JmsBatch;
+import au.com.rma.micronaut.jms.annotation.JmsClient;
+import au.com.rma.micronaut.jms.annotation.JmsContentType;
+import au.com.rma.micronaut.jms.annotation.JmsDestination;
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import au.com.rma.micronaut.jms.annotation.JmsProperty;
+import au.com.rma.micronaut.jms.annotation.JmsReplyDestination;
+import au.com.rma.micronaut.jms.binding.JmsClientPropertyBinder;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
+import io.micronaut.core.annotation.AnnotationMetadata;
+import io.micronaut.core.annotation.AnnotationValue;
+import io.micronaut.core.async.publisher.Publishers;
+import io.micronaut.core.bind.annotation.Bindable;
+import io.micronaut.core.type.Argument;
+import io.micronaut.core.type.ReturnType;
+import io.micronaut.inject.ExecutableMethod;
+import io.micronaut.messaging.annotation.Body;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Everything needed to send a message from a {@link JmsClient} method, resolved from the annotations of the
+ * method when the application starts so that calls do not inspect any annotations.
+ */
+public class JmsClientMethodPlan {
+  private final String connectionName;
+  private final String destinationName;
+  private final JmsDestinationType destinationType;
+  private final boolean reply;
+  private final String replyDestinationName;
+  private final JmsDestinationType replyDestinationType;
+  private final Duration replyTimeout;
+  private final Duration sendTimeout;
+  private final boolean batch;
+  private final int batchMaxMessages;
+  private final Duration batchMaxDelay;
+  private final int batchRetries;
+  private final int bodyIndex;
+  private final Class<?> returnType;
+  private final boolean async;
+  private final Class<?> responseType;
+  private final JmsClientPropertyBinder.PropertyPlan propertyPlan;
+  private final boolean bytesMessages;
+  private final String contentType;
+  private final boolean streaming;
+  private final int streamChunkSize;
+  private final ServerConfiguration.CompressionConfiguration compression;
+
+  public JmsClientMethodPlan(ExecutableMethod<?, ?> method, JmsClientPropertyBinder propertyBinder) {
+    this(method, propertyBinder, ServerConfiguration::new);
+  }
+
+  public JmsClientMethodPlan(
+      ExecutableMethod<?, ?> method,
+      JmsClientPropertyBinder propertyBinder,
+      Function<String, ServerConfiguration> configurations) {
+    connectionName = method.findAnnotation(JmsClient.class)
+        .orElseThrow(() -> new IllegalArgumentException("No @JmsClient annotation on method: " + method))
+        .stringValue()
+        .orElseThrow(() -> new IllegalArgumentException("@JmsClient must contain a connection name on method: " + method));
+
+    AnnotationValue<JmsDestination> destinationAnnotation = method.findAnnotation(JmsDestination.class)
+        .orElseThrow(() -> new IllegalArgumentException("No @JmsDestination annotation on method: " + method));
+    destinationName = destinationAnnotation.stringValue()
+        .orElseThrow(() -> new IllegalArgumentException("@JmsDestination must contain the queue to send on method: " + method));
+    destinationType = destinationAnnotation.enumValue("type", JmsDestinationType.class)
+        .orElse(JmsDestinationType.QUEUE);
+
+    Optional<AnnotationValue<JmsReplyDestination>> replyToAnnotation = method.findAnnotation(JmsReplyDestination.class);
+    reply = replyToAnnotation.isPresent();
+    replyDestinationName = replyToAnnotation.flatMap(annotation -> annotation.stringValue())
+        .filter(value -> !value.isEmpty())
+        .orElse(null);
+    replyDestinationType = replyToAnnotation.flatMap(annotation -> annotation.enumValue("type", JmsDestinationType.class))
+        .orElse(JmsDestinationType.QUEUE);
+    replyTimeout = Duration.ofMillis(replyToAnnotation.map(annotation -> annotation.longValue("timeout").orElse(5_000L)).orElse(5_000L));
+
+    Optional<AnnotationValue<JmsBatch>> batchAnnotation = method.findAnnotation(JmsBatch.class);
+    batch = batchAnnotation.isPresent();
+    if (batch && reply) {
+      throw new IllegalArgumentException("@JmsBatch can not be used with @JmsReplyDestination on method: " + method);
+    }
+    batchMaxMessages = batchAnnotation.map(annotation -> annotation.intValue("maxMessages").orElse(100)).orElse(100);
+    batchMaxDelay = Duration.ofMillis(batchAnnotation.map(annotation -> annotation.longValue("maxDelay").orElse(100L)).orElse(100L));
+    batchRetries = batchAnnotation.map(annotation -> annotation.intValue("retries").orElse(0)).orElse(0);
+
+    bodyIndex = findBodyIndex(method.getArguments());
+    if (bodyIndex < 0) {
+      throw new JmsClientException("No valid body argument found on method: " + method.getMethodName());
+    }
+    streaming = InputStream.class.isAssignableFrom(method.getArguments()[bodyIndex].getType());
+    if (streaming && (batch || reply)) {
+      throw new IllegalArgumentException("An InputStream body can not be used with @JmsBatch or @JmsReplyDestination on method: " + method);
+    }
+
+    ReturnType<?> methodReturnType = method.getReturnType();
+    returnType = methodReturnType.getType();
+    async = CompletionStage.class.isAssignableFrom(returnType) || Publishers.isConvertibleToPublisher(returnType);
+    responseType = async
+        ? methodReturnType.getFirstTypeVariable().<Class<?>>map(Argument::getType).orElse(Object.class)
+        : returnType;
+
+    propertyPlan = propertyBinder.plan(method);
+    ServerConfiguration configuration = configurations.apply(connectionName);
+    bytesMessages = configuration.isBytesMessages();
+    streamChunkSize = configuration.getStreamChunkSize();
+    sendTimeout = configuration.getSendTimeout();
+    compression = configuration.getCompression();
+    contentType = method.stringValue(JmsContentType.class)
+        .orElseGet(() -> configuration.getContentTypes().get(destinationName));
+  }
+
+  public String getConnectionName() {
+    return connectionName;
+  }
+
+  public String getDestinationName() {
+    return destinationName;
+  }
+
+  public JmsDestinationType getDestinationType() {
+    return destinationType;
+  }
+
+  /**
+   * @return {@code true} if the method waits for a reply
+   */
+  public boolean isReply() {
+    return reply;
+  }
+
+  /**
+   * @return The reply destination, or {@code null} to use a temporary queue
+   */
+  public String getReplyDestinationName() {
+    return replyDestinationName;
+  }
+
+  public JmsDestinationType getReplyDestinationType() {
+    return replyDestinationType;
+  }
+
+  /**
+   * @return How long to wait for the reply
+   */
+  public Duration getReplyTimeout() {
+    return replyTimeout;
+  }
+
+  /**
+   * @return How long to wait for an asynchronous send to be confirmed by the queue manager
+   */
+  public Duration getSendTimeout() {
+    return sendTimeout;
+  }
+
+  public boolean isBatch() {
+    return batch;
+  }
+
+  public int getBatchMaxMessages() {
+    return batchMaxMessages;
+  }
+
+  public Duration getBatchMaxDelay() {
+    return batchMaxDelay;
+  }
+
+  public int getBatchRetries() {
+    return batchRetries;
+  }
+
+  public int getBodyIndex() {
+    return bodyIndex;
+  }
+
+  public Class<?> getReturnType() {
+    return returnType;
+  }
+
+  /**
+   * @return {@code true} if the method returns a {@link CompletionStage} or reactive type
+   */
+  public boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * @return {@code true} if the method returns a {@link CompletionStage}
+   */
+  public boolean isCompletionStage() {
+    return CompletionStage.class.isAssignableFrom(returnType);
+  }
+
+  /**
+   * @return The type the reply is converted to
+   */
+  public Class<?> getResponseType() {
+    return responseType;
+  }
+
+  public JmsClientPropertyBinder.PropertyPlan getPropertyPlan() {
+    return propertyPlan;
+  }
+
+  /**
+   * The body is the only argument, the argument annotated with {@link Body}, or else the first other bindable
+   * argument. {@link JmsProperty} arguments are set as message properties and are never sent as the body.
+   */
+  private static int findBodyIndex(Argument<?>[] arguments) {
+    if (arguments.length == 1) {
+      return 0;
+    }
+    for (int index = 0; index < arguments.length; index++) {
+      if (arguments[index].getAnnotationMetadata().hasAnnotation(Body.class)) {
+        return index;
+      }
+    }
+    for (int index = 0; index < arguments.length; index++) {
+      AnnotationMetadata metadata = arguments[index].getAnnotationMetadata();
+      if (metadata.hasAnnotation(Bindable.class) && !metadata.hasAnnotation(JmsProperty.class)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return {@code true} if JSON bodies are sent as a {@code BytesMessage}
+   */
+  public boolean isBytesMessages() {
+    return bytesMessages;
+  }
+
+  /**
+   * @return The content type used to encode the body, or {@code null} for JSON
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return {@code true} if the body is an {@code InputStream} sent as a group of messages
+   */
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  public int getStreamChunkSize() {
+    return streamChunkSize;
+  }
+
+  public ServerConfiguration.CompressionConfiguration getCompression() {
+    return compression;
+  }
+}
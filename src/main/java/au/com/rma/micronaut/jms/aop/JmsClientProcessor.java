@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.aop;
+
+import au.com.rma.micronaut.jms.annotation.JmsClient;
+import au.com.rma.micronaut.jms.annotation.JmsDestination;
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.inject.BeanDefinition;
+import io.micronaut.inject.ExecutableMethod;
+import io.micronaut.inject.qualifiers.Qualifiers;
+
+import javax.inject.Singleton;
+
+/**
+ * Resolves the plan of every {@link JmsClient} method when the application starts, as is done for listeners, so
+ * the first call of a client does not inspect its annotations or warm up the conversion caches. Client interfaces
+ * are introduced, so their methods are not handed to an {@link io.micronaut.context.processor.ExecutableMethodProcessor}.
+ */
+@Singleton
+public class JmsClientProcessor implements ApplicationEventListener<StartupEvent> {
+  private final BeanContext beanContext;
+  private final JmsClientInterceptor interceptor;
+
+  public JmsClientProcessor(BeanContext beanContext, JmsClientInterceptor interceptor) {
+    this.beanContext = beanContext;
+    this.interceptor = interceptor;
+  }
+
+  @Override
+  public void onApplicationEvent(StartupEvent event) {
+    for (BeanDefinition<?> beanDefinition : beanContext.getBeanDefinitions(Qualifiers.byStereotype(JmsClient.class))) {
+      for (ExecutableMethod<?, ?> method : beanDefinition.getExecutableMethods()) {
+        if (method.hasAnnotation(JmsDestination.class)) {
+          interceptor.prepare(method);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.aop;
+
+import au.com.rma.micronaut.jms.binding.MessageArgumentExtractor;
+import au.com.rma.micronaut.jms.binding.MessageBinderRegistry;
+import io.micronaut.core.bind.exceptions.UnsatisfiedArgumentException;
+import io.micronaut.core.type.Argument;
+import io.micronaut.inject.ExecutableMethod;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.InputStream;
+
+/**
+ * Everything needed to invoke a {@link au.com.rma.micronaut.jms.annotation.JmsListener} method, resolved
+ * once when the listener starts so that receiving a message does not inspect any annotations.
+ */
+public class JmsListenerMethodPlan {
+  private final ExecutableMethod<Object, Object> method;
+  private final Object bean;
+  private final MessageArgumentExtractor[] extractors;
+  private final int streamIndex;
+  private final boolean reply;
+
+  @SuppressWarnings("unchecked")
+  public JmsListenerMethodPlan(ExecutableMethod<?, ?> method, Object bean, MessageBinderRegistry messageBinderRegistry) {
+    this.method = (ExecutableMethod<Object, Object>)method;
+    this.bean = bean;
+
+    Argument<?>[] arguments = method.getArguments();
+    this.extractors = new MessageArgumentExtractor[arguments.length];
+    int streamArgument = -1;
+    for (int index = 0; index < arguments.length; index++) {
+      Argument<?> argument = arguments[index];
+      if (argument.getType() == InputStream.class) {
+        streamArgument = index;
+      }
+      // an argument without a binding annotation fails every message, as it did with the executable binder
+      extractors[index] = messageBinderRegistry.findExtractor(argument)
+          .orElse(message -> {
+            throw new UnsatisfiedArgumentException(argument);
+          });
+    }
+    this.streamIndex = streamArgument;
+    Class<?> returnType = method.getReturnType().getType();
+    this.reply = returnType != void.class && returnType != Void.class;
+  }
+
+  public ExecutableMethod<Object, Object> getMethod() {
+    return method;
+  }
+
+  /**
+   * Invoke the listener method with the arguments extracted from the message.
+   *
+   * @param message The received message
+   * @return The value returned by the listener method
+   * @throws JMSException if an argument can not be read from the message
+   */
+  public Object invoke(Message message) throws JMSException {
+    return invoke(bind(message));
+  }
+
+  /**
+   * @param message The received message
+   * @return The arguments of the listener method extracted from the message, leaving the stream argument empty
+   * @throws JMSException if an argument can not be read from the message
+   */
+  public Object[] bind(Message message) throws JMSException {
+    Object[] values = new Object[extractors.length];
+    for (int index = 0; index < extractors.length; index++) {
+      if (index != streamIndex) {
+        values[index] = extractors[index].extract(message);
+      }
+    }
+    return values;
+  }
+
+  public Object invoke(Object[] values) {
+    return method.invoke(bean, values);
+  }
+
+  /**
+   * @return {@code false} if the method returns {@code void}, so no reply is ever sent
+   */
+  public boolean isReply() {
+    return reply;
+  }
+
+  /**
+   * @return The index of the {@code InputStream} argument that reads a group of messages, or -1
+   */
+  public int getStreamIndex() {
+    return streamIndex;
+  }
+}
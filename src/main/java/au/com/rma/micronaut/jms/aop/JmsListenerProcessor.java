@@ -22,21 +22,36 @@
  */
 package au.com.rma.micronaut.jms.aop;
 
+import au.com.rma.micronaut.jms.annotation.JmsBatch;
+import au.com.rma.micronaut.jms.annotation.JmsContentType;
 import au.com.rma.micronaut.jms.annotation.JmsDestination;
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import au.com.rma.micronaut.jms.annotation.JmsDispatchMode;
 import au.com.rma.micronaut.jms.annotation.JmsListener;
+import au.com.rma.micronaut.jms.annotation.JmsOrdered;
+import au.com.rma.micronaut.jms.annotation.JmsSubscription;
 import au.com.rma.micronaut.jms.binding.MessageBinderRegistry;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
 import au.com.rma.micronaut.jms.conversion.ConversionHelper;
+import au.com.rma.micronaut.jms.conversion.MessageCodec;
+import au.com.rma.micronaut.jms.jms.JmsGroupInputStream;
 import au.com.rma.micronaut.jms.jms.JmsHelper;
+import au.com.rma.micronaut.jms.jms.JmsListenerOptions;
+import au.com.rma.micronaut.jms.jms.JmsMessageGroups;
+import au.com.rma.micronaut.jms.jms.JmsReplySender;
+import au.com.rma.micronaut.jms.jms.MessageKeyExtractor;
 import com.ibm.msg.client.jms.JmsMessage;
 import io.micronaut.context.BeanContext;
 import io.micronaut.context.processor.ExecutableMethodProcessor;
 import io.micronaut.core.annotation.AnnotationValue;
-import io.micronaut.core.bind.BoundExecutable;
-import io.micronaut.core.bind.DefaultExecutableBinder;
-import io.micronaut.core.bind.ExecutableBinder;
+import io.micronaut.core.async.publisher.Publishers;
+import io.micronaut.core.type.Argument;
 import io.micronaut.inject.BeanDefinition;
 import io.micronaut.inject.ExecutableMethod;
 import io.micronaut.inject.qualifiers.Qualifiers;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,9 +59,15 @@ import javax.annotation.PreDestroy;
 import javax.inject.Qualifier;
 import javax.inject.Singleton;
 import javax.jms.*;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A {@link ExecutableMethodProcessor} that will process all beans annotated with {@link JmsListener}
@@ -55,7 +76,6 @@ import java.util.List;
 @Singleton
 public class JmsListenerProcessor implements ExecutableMethodProcessor<JmsListener>, AutoCloseable {
   private static final Logger logger = LoggerFactory.getLogger(JmsListenerProcessor.class);
-
   private BeanContext beanContext;
   private ConversionHelper conversionHelper;
   private JmsHelper jmsHelper;
@@ -82,31 +102,225 @@ public class JmsListenerProcessor implements ExecutableMethodProcessor<JmsListen
 
     String destination = destinationAnnotation.stringValue()
         .orElseThrow(() -> new JmsServerException("@Destination must contain a connection name on method: " + method));
-    String name = method.findAnnotation(JmsListener.class)
-        .orElseThrow(() -> new IllegalArgumentException("No @JmsListener annotation on method: " + method))
-        .stringValue()
+    AnnotationValue<JmsListener> listenerAnnotation = method.findAnnotation(JmsListener.class)
+        .orElseThrow(() -> new IllegalArgumentException("No @JmsListener annotation on method: " + method));
+    String name = listenerAnnotation.stringValue()
         .orElseThrow(() -> new IllegalArgumentException("@JmsListener must contain a connection name on method: " + method));
 
+    JmsListenerOptions options = new JmsListenerOptions();
+    options.setDestination(destination);
+    options.setSelector(listenerAnnotation.stringValue("selector").orElse(null));
+    options.setConcurrency(listenerAnnotation.stringValue("concurrency").orElse("1"));
+    options.setDestinationType(destinationAnnotation.enumValue("type", JmsDestinationType.class).orElse(JmsDestinationType.QUEUE));
+    method.findAnnotation(JmsSubscription.class).ifPresent(subscription -> options.setSubscription(
+        subscription.stringValue().filter(value -> !value.isEmpty())
+            .orElse(beanDefinition.getBeanType().getSimpleName() + "." + method.getMethodName()),
+        subscription.booleanValue("durable").orElse(false),
+        subscription.booleanValue("shared").orElse(false)));
+    if (options.getDestinationType() == JmsDestinationType.TOPIC && !options.isShared() && options.getMaxConsumers() > 1) {
+      throw new IllegalArgumentException("A topic listener with concurrency must use a shared @JmsSubscription on method: " + method);
+    }
+    options.setPrefetch(listenerAnnotation.intValue("prefetch").orElse(0));
+    options.setDispatchMode(listenerAnnotation.enumValue("dispatch", JmsDispatchMode.class).orElse(JmsDispatchMode.PROVIDER));
+    listenerAnnotation.stringValue("executor")
+        .filter(executor -> !executor.isEmpty())
+        .ifPresent(executor -> {
+          if (options.getDispatchMode() != JmsDispatchMode.PULL) {
+            throw new IllegalArgumentException("@JmsListener executor can only be used with PULL dispatch on method: " + method);
+          }
+          options.setExecutor(beanContext.getBean(ExecutorService.class, Qualifiers.byName(executor)));
+        });
+
     io.micronaut.context.Qualifier<Object> qualifier = beanDefinition.getAnnotationTypeByStereotype(Qualifier.class)
         .map(type -> Qualifiers.byAnnotation(beanDefinition, type))
         .orElse(null);
+    @SuppressWarnings("unchecked")
     Class<Object> beanType = (Class<Object>)beanDefinition.getBeanType();
     Object bean = beanContext.getBean(beanType, qualifier);
-    ExecutableBinder<Message> binder = new DefaultExecutableBinder<>();
 
-    listeners.add(jmsHelper.withListener(name, destination, (context, message) -> {
-        BoundExecutable boundExecutable = binder.bind(method, messageBinderRegistry, message);
+    Optional<AnnotationValue<JmsBatch>> batchAnnotation = method.findAnnotation(JmsBatch.class);
+    if (batchAnnotation.isPresent()) {
+      options.setBatchSize(batchAnnotation.get().intValue("maxMessages").orElse(100));
+      options.setBatchDelay(Duration.ofMillis(batchAnnotation.get().longValue("maxDelay").orElse(100L)));
+      listeners.add(jmsHelper.withBatchListener(name, options, batchHandler(method, bean)));
+      return;
+    }
+
+    JmsListenerMethodPlan plan = new JmsListenerMethodPlan(method, bean, messageBinderRegistry);
+    conversionHelper.prepare(method.getReturnType().getType());
+    ServerConfiguration configuration = jmsHelper.getConfiguration(name);
+    String replyContentType = method.stringValue(JmsContentType.class).orElse(null);
+
+    if (plan.getStreamIndex() >= 0) {
+      if (method.hasAnnotation(JmsOrdered.class)) {
+        throw new IllegalArgumentException("@JmsOrdered can not be used with an InputStream argument on method: " + method);
+      }
+      options.setSelector(options.getSelector() == null
+          ? JmsMessageGroups.FIRST_IN_GROUP_SELECTOR
+          : JmsMessageGroups.FIRST_IN_GROUP_SELECTOR + " AND (" + options.getSelector() + ")");
+      Duration groupTimeout = configuration.getListener().getGroupTimeout();
+      listeners.add(jmsHelper.withBatchListener(name, options, (context, messages) -> {
+        Message message = messages.get(0);
+        Object[] values = plan.bind(message);
+        try (JmsGroupInputStream stream = new JmsGroupInputStream(context, message, groupTimeout)) {
+          values[plan.getStreamIndex()] = stream;
+          Object result = plan.invoke(values);
+          if (plan.isReply()) {
+            sendReply(context, message, result, replyContentType, configuration, false);
+          }
+        } catch (IOException exception) {
+          throw new JmsServerException("Unable to read the message group", exception);
+        }
+      }));
+      return;
+    }
+
+    Class<?> returnType = method.getReturnType().getType();
+    if (CompletionStage.class.isAssignableFrom(returnType) || Publishers.isConvertibleToPublisher(returnType)) {
+      if (method.hasAnnotation(JmsOrdered.class)) {
+        throw new IllegalArgumentException("@JmsOrdered can not be used with a reactive return type on method: " + method);
+      }
+      options.setMaxInFlight(listenerAnnotation.intValue("maxInFlight").orElse(16));
+      listeners.add(jmsHelper.withReactiveListener(name, options, plan.isReply()
+          ? (context, message) -> toCompletionStage(plan.invoke(message))
+              .thenAccept(result -> reply(name, message, result, replyContentType, configuration))
+          : (context, message) -> toCompletionStage(plan.invoke(message))));
+      return;
+    }
+
+    method.findAnnotation(JmsOrdered.class).ifPresent(ordered -> {
+      int lanes = ordered.intValue("lanes").orElse(0);
+      options.setOrdered(
+          lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors(),
+          keyExtractor(ordered),
+          ordered.intValue("window").orElse(100));
+    });
+
+    listeners.add(jmsHelper.withListener(name, options, plan.isReply()
+        ? (context, message) -> sendReply(context, message, plan.invoke(message), replyContentType, configuration, false)
+        : (context, message) -> plan.invoke(message)));
+  }
+
+  /**
+   * Reply once a reactive listener completes. The listener completes on a thread of its own choosing while the
+   * consumer context may be in use, so the reply is sent and committed on a pooled context. A failed reply fails
+   * the message so it is redelivered.
+   *
+   * The reply is committed before its request is acknowledged with the rest of its window, so a failure elsewhere in
+   * the window answers the request again. Replies are at least once and callers deduplicate by correlation id.
+   */
+  private void reply(String name, Message message, Object result, String replyContentType,
+      ServerConfiguration configuration) {
+    jmsHelper.withTransactedClient(name,
+        context -> sendReply(context, message, result, replyContentType, configuration, true));
+  }
+
+  /**
+   * Adapt the result of a reactive listener, which must complete with at most one value.
+   */
+  private CompletionStage<?> toCompletionStage(Object result) {
+    if (result == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    if (result instanceof CompletionStage) {
+      return (CompletionStage<?>)result;
+    }
 
-        Object returnValue = boundExecutable.invoke(bean);
+    CompletableFuture<Object> completed = new CompletableFuture<>();
+    @SuppressWarnings("unchecked")
+    Publisher<Object> publisher = Publishers.convertPublisher(result, Publisher.class);
+    publisher.subscribe(new Subscriber<Object>() {
+      private Subscription subscription;
+      private Object value;
+      private boolean received;
 
-        if (message.getJMSReplyTo() != null) {
-          JMSProducer producer = context.createProducer();
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
 
-          TextMessage reply = context.createTextMessage(conversionHelper.convertObjectToString(returnValue));
-          reply.setJMSCorrelationID(message.getJMSCorrelationID());
-          producer.send(message.getJMSReplyTo(), reply);
+      @Override
+      public void onNext(Object next) {
+        if (completed.isDone()) {
+          return;
+        }
+        if (received) {
+          subscription.cancel();
+          completed.completeExceptionally(
+              new JmsServerException("A reactive listener must not emit more than one value"));
+          return;
         }
-    }));
+        received = true;
+        value = next;
+        // request one more so a second value is detected rather than ignored
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        completed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        completed.complete(value);
+      }
+    });
+    return completed;
+  }
+
+  private MessageKeyExtractor keyExtractor(AnnotationValue<JmsOrdered> ordered) {
+    Optional<Class<?>> extractorType = ordered.classValue("keyExtractor")
+        .filter(type -> type != MessageKeyExtractor.class);
+    if (extractorType.isPresent()) {
+      return (MessageKeyExtractor)beanContext.getBean(extractorType.get());
+    }
+    String property = ordered.stringValue("property").orElse(JmsMessageGroups.GROUP_ID);
+    return message -> message.getObjectProperty(property);
+  }
+
+  private void sendReply(JMSContext context, Message message, Object returnValue, String replyContentType,
+      ServerConfiguration configuration, boolean pooled) throws JMSException {
+    Destination replyTo = message.getJMSReplyTo();
+    if (replyTo == null) {
+      return;
+    }
+
+    String contentType = replyContentType;
+    if (contentType == null && conversionHelper.hasCodec(message.getStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY))) {
+      contentType = message.getStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY);
+    }
+    Object body = conversionHelper.serializeBody(
+        returnValue, contentType, configuration.isBytesMessages() || message instanceof BytesMessage);
+    Message reply = conversionHelper.createMessage(
+        context, conversionHelper.compressBody(body, configuration.getCompression()), contentType);
+    reply.setJMSCorrelationID(message.getJMSCorrelationID());
+    JmsReplySender replySender = jmsHelper.getReplySender(configuration.getName());
+    if (pooled) {
+      replySender.sendOnce(context, replyTo, reply);
+    } else {
+      replySender.send(context, replyTo, reply);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private JmsHelper.ContextBatchHandler batchHandler(ExecutableMethod<?, ?> method, Object bean) {
+    Argument<?>[] arguments = method.getArguments();
+    if (arguments.length != 1 || !List.class.isAssignableFrom(arguments[0].getType())) {
+      throw new JmsServerException("@JmsBatch listener must have a single List argument on method: " + method);
+    }
+    Class<?> elementType = arguments[0].getFirstTypeVariable().<Class<?>>map(Argument::getType).orElse(Object.class);
+    conversionHelper.prepare(elementType);
+    ExecutableMethod<Object, Object> executable = (ExecutableMethod<Object, Object>)method;
+
+    return (context, messages) -> {
+      List<Object> bodies = new ArrayList<>(messages.size());
+      for (Message message : messages) {
+        bodies.add(conversionHelper.readBody(message, elementType));
+      }
+      executable.invoke(bean, bodies);
+    };
   }
 
   @SuppressWarnings("unchecked")
@@ -160,7 +374,7 @@ public class JmsListenerProcessor implements ExecutableMethodProcessor<JmsListen
 
   @Override
   @PreDestroy
-  public void close() throws Exception {
+  public void close() {
     listeners.forEach(listener -> {
       try {
         listener.close();
@@ -25,6 +25,8 @@ package au.com.rma.micronaut.jms.aop;
 import io.micronaut.messaging.exceptions.MessagingException;
 
 public class JmsServerException extends MessagingException {
+  private static final long serialVersionUID = 1L;
+
   public JmsServerException(String message) {
     super(message);
   }
@@ -27,6 +27,7 @@ import au.com.rma.micronaut.jms.conversion.ConversionHelper;
 import au.com.rma.micronaut.jms.aop.JmsClientException;
 import io.micronaut.aop.MethodInvocationContext;
 import io.micronaut.core.annotation.AnnotationValue;
+import io.micronaut.core.type.Argument;
 import io.micronaut.inject.ExecutableMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,53 +65,87 @@ public class JmsClientPropertyBinder {
   }
 
   public JmsClientBinder binder(MethodInvocationContext<Object, Object> context) {
-    ExecutableMethod<Object, Object> method = context.getExecutableMethod();
+    return binder(plan(context.getExecutableMethod()), context.getParameterValues());
+  }
 
-    Map<String, Object> properties = new LinkedHashMap<>();
+  /**
+   * Resolve the {@link JmsProperty} annotations of a method into the assignments applied to each message.
+   *
+   * @param method The client method
+   * @return The property assignments for the method
+   */
+  public PropertyPlan plan(ExecutableMethod<?, ?> method) {
+    Map<String, PropertyAssignment> assignments = new LinkedHashMap<>();
     List<AnnotationValue<JmsProperty>> classAnnotations = method.getAnnotationValuesByType(JmsProperty.class);
     reverse(classAnnotations);
-    classAnnotations.forEach( p ->
-        properties.put(p.stringValue("name")
-                .orElseThrow(() -> new JmsClientException("Unable to get the property name for @JmsProperty annotation on method: " + method)),
-            p.stringValue().orElse(null)));
-    Map<String, Object> parameterValueMap = context.getParameterValueMap();
-    Arrays.stream(context.getArguments())
-        .forEach( argument -> {
-          AnnotationValue<JmsProperty> annotation = argument.getAnnotation(JmsProperty.class);
-          if (annotation != null) {
-            properties.put(annotation.stringValue("name")
-                    .orElseThrow(() -> new JmsClientException("Unable to get the property name for @JmsProperty annotation on method: " + method + " argument: " + argument)),
-                parameterValueMap.get(argument.getName()));
-          }
-        });
-
-    return (producer, message) -> applyProperties(producer, message, properties);
-  }
-
-
-  private void applyProperties(JMSProducer producer, Message message, Map<String, Object> properties) {
-    properties.entrySet().forEach(e -> {
-      String property = e.getKey();
-      Object value = e.getValue();
-      boolean assigned = false;
-      BiConsumer<JMSProducer, Object> producerAssignment = producerCache.get(property);
-      if (producerAssignment != null) {
-        producerAssignment.accept(producer, value);
-        assigned = true;
+    classAnnotations.forEach( p -> {
+      String property = p.stringValue("name")
+          .orElseThrow(() -> new JmsClientException("Unable to get the property name for @JmsProperty annotation on method: " + method));
+      assignments.put(property, assignment(property, -1, p.stringValue().orElse(null)));
+    });
+    Argument<?>[] arguments = method.getArguments();
+    for (int index = 0; index < arguments.length; index++) {
+      Argument<?> argument = arguments[index];
+      AnnotationValue<JmsProperty> annotation = argument.getAnnotation(JmsProperty.class);
+      if (annotation != null) {
+        String property = annotation.stringValue("name")
+            .orElseThrow(() -> new JmsClientException("Unable to get the property name for @JmsProperty annotation on method: " + method + " argument: " + argument));
+        assignments.put(property, assignment(property, index, null));
       }
+    }
+    return new PropertyPlan(new ArrayList<>(assignments.values()));
+  }
 
-      BiConsumer<Message, Object> messageAssignment = messageCache.get(property);
-      if (messageAssignment != null) {
-        messageAssignment.accept(message, value);
-        assigned = true;
+  public JmsClientBinder binder(PropertyPlan plan, Object[] parameterValues) {
+    return (producer, message) -> plan.assignments.forEach(assignment -> {
+      Object value = assignment.argumentIndex < 0 ? assignment.value : parameterValues[assignment.argumentIndex];
+      if (assignment.producerAssignment != null) {
+        assignment.producerAssignment.accept(producer, value);
       }
-
-      if (!assigned) {
-        throw new JmsClientException("Unsupported @JmsProperty annotation " + property + "=" + value);
+      if (assignment.messageAssignment != null) {
+        assignment.messageAssignment.accept(message, value);
       }
     });
   }
 
+  private PropertyAssignment assignment(String property, int argumentIndex, Object value) {
+    BiConsumer<JMSProducer, Object> producerAssignment = producerCache.get(property);
+    BiConsumer<Message, Object> messageAssignment = messageCache.get(property);
+    if (producerAssignment == null && messageAssignment == null) {
+      throw new JmsClientException("Unsupported @JmsProperty annotation " + property + "=" + value);
+    }
+    return new PropertyAssignment(argumentIndex, value, producerAssignment, messageAssignment);
+  }
+
+  /**
+   * The {@link JmsProperty} assignments of a client method, resolved once per method.
+   */
+  public static class PropertyPlan {
+    private final List<PropertyAssignment> assignments;
+
+    private PropertyPlan(List<PropertyAssignment> assignments) {
+      this.assignments = assignments;
+    }
+  }
+
+  private static class PropertyAssignment {
+    private final int argumentIndex;
+    private final Object value;
+    private final BiConsumer<JMSProducer, Object> producerAssignment;
+    private final BiConsumer<Message, Object> messageAssignment;
+
+    private PropertyAssignment(
+        int argumentIndex,
+        Object value,
+        BiConsumer<JMSProducer, Object> producerAssignment,
+        BiConsumer<Message, Object> messageAssignment) {
+      this.argumentIndex = argumentIndex;
+      this.value = value;
+      this.producerAssignment = producerAssignment;
+      this.messageAssignment = messageAssignment;
+    }
+  }
+
   @FunctionalInterface
   public interface JmsClientBinder {
     void bind(JMSProducer producer, Message message);
@@ -42,7 +42,7 @@ import java.util.Optional;
 @Singleton
 public class MessageBinderRegistry implements ArgumentBinderRegistry<Message> {
 
-  private final Map<Class<? extends Annotation>, ArgumentBinder<Object, Message>> byAnnotation = new LinkedHashMap<>();
+  private final Map<Class<? extends Annotation>, JmsArgumentBinder> byAnnotation = new LinkedHashMap<>();
 
   public MessageBinderRegistry(ConversionHelper conversionHelper) {
     byAnnotation.put(JmsProperty.class, new JmsPropertyAnnotationBinder(conversionHelper));
@@ -56,4 +56,16 @@ public class MessageBinderRegistry implements ArgumentBinderRegistry<Message> {
         .map(byAnnotation::get)
         .orElse(null));
   }
+
+  /**
+   * Resolve the extractor for an argument annotated with a {@link Bindable} annotation.
+   *
+   * @param argument The listener method argument
+   * @return The extractor, or empty if the argument is not bindable
+   */
+  public Optional<MessageArgumentExtractor> findExtractor(Argument<?> argument) {
+    return argument.getAnnotationMetadata().getAnnotationTypeByStereotype(Bindable.class)
+        .map(byAnnotation::get)
+        .map(binder -> binder.extractor(argument));
+  }
 }
@@ -22,16 +22,12 @@
  */
 package au.com.rma.micronaut.jms.binding.binders;
 
+import au.com.rma.micronaut.jms.binding.JmsArgumentBinder;
+import au.com.rma.micronaut.jms.binding.MessageArgumentExtractor;
 import au.com.rma.micronaut.jms.conversion.ConversionHelper;
-import au.com.rma.micronaut.jms.aop.JmsServerException;
-import io.micronaut.core.bind.ArgumentBinder;
-import io.micronaut.core.convert.ArgumentConversionContext;
+import io.micronaut.core.type.Argument;
 
-import javax.jms.JMSException;
-import javax.jms.Message;
-import java.util.Optional;
-
-public class JmsBodyAnnotationBinder implements ArgumentBinder<Object, Message> {
+public class JmsBodyAnnotationBinder implements JmsArgumentBinder {
 
   private ConversionHelper conversionHelper;
 
@@ -40,13 +36,9 @@ public class JmsBodyAnnotationBinder implements ArgumentBinder<Object, Message>
   }
 
   @Override
-  public BindingResult<Object> bind(ArgumentConversionContext<Object> context, Message source) {
-    try {
-      String body = source.getBody(String.class);
-      Class<Object> type = context.getArgument().getType();
-      return () -> Optional.of(conversionHelper.convertMessageToObject(body, type));
-    } catch (JMSException jmse) {
-      throw new JmsServerException("Failed to convert body to " + context.getArgument());
-    }
+  public MessageArgumentExtractor extractor(Argument<?> argument) {
+    Class<?> type = argument.getType();
+    conversionHelper.prepare(type);
+    return message -> conversionHelper.readBody(message, type);
   }
 }
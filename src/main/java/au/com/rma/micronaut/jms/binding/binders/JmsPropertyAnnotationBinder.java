@@ -23,19 +23,19 @@
 package au.com.rma.micronaut.jms.binding.binders;
 
 import au.com.rma.micronaut.jms.annotation.JmsProperty;
+import au.com.rma.micronaut.jms.binding.JmsArgumentBinder;
+import au.com.rma.micronaut.jms.binding.MessageArgumentExtractor;
 import au.com.rma.micronaut.jms.conversion.ConversionHelper;
 import au.com.rma.micronaut.jms.aop.JmsServerException;
 import io.micronaut.core.annotation.AnnotationValue;
-import io.micronaut.core.bind.ArgumentBinder;
-import io.micronaut.core.convert.ArgumentConversionContext;
+import io.micronaut.core.type.Argument;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
 
-public class JmsPropertyAnnotationBinder implements ArgumentBinder<Object, Message> {
+public class JmsPropertyAnnotationBinder implements JmsArgumentBinder {
 
   private Map<String, FunctionWithException<Message, Object, JMSException>> propertyMap = new LinkedHashMap<>();
   private ConversionHelper conversionHelper;
@@ -62,8 +62,8 @@ public class JmsPropertyAnnotationBinder implements ArgumentBinder<Object, Messa
   }
 
   @Override
-  public BindingResult<Object> bind(ArgumentConversionContext<Object> context, Message source) {
-    AnnotationValue<JmsProperty> annotation = context.getAnnotation(JmsProperty.class);
+  public MessageArgumentExtractor extractor(Argument<?> argument) {
+    AnnotationValue<JmsProperty> annotation = argument.getAnnotation(JmsProperty.class);
 
     String property = annotation.stringValue("name")
         .orElseThrow(() -> new JmsServerException("@JmsProperty annotation missing required name"));
@@ -72,13 +72,7 @@ public class JmsPropertyAnnotationBinder implements ArgumentBinder<Object, Messa
       throw new JmsServerException("Unable to find a bindable property for " + property);
     }
 
-    Class<?> argumentType = context.getArgument().getType();
-    return () -> {
-      try {
-        return Optional.of(conversionHelper.convert(function.invoke(source), argumentType));
-      } catch (JMSException jmse) {
-        throw new JmsServerException("Unable to read property " + property + " from message");
-      }
-    };
+    Class<?> argumentType = argument.getType();
+    return message -> conversionHelper.convert(function.invoke(message), argumentType);
   }
 }
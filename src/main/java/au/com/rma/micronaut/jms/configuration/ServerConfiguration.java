@@ -22,9 +22,16 @@
  */
 package au.com.rma.micronaut.jms.configuration;
 
+import io.micronaut.context.annotation.ConfigurationProperties;
 import io.micronaut.context.annotation.Context;
 import io.micronaut.context.annotation.EachProperty;
 import io.micronaut.context.annotation.Parameter;
+import io.micronaut.core.convert.format.MapFormat;
+import io.micronaut.core.naming.conventions.StringConvention;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
 
 @Context
 @EachProperty("mq-server")
@@ -39,6 +46,8 @@ public class ServerConfiguration implements io.micronaut.core.naming.Named {
 
   private int port = 1414;
 
+  private String connectionNameList;
+
   private String queueManager = "";
 
   private String applicationName;
@@ -51,6 +60,32 @@ public class ServerConfiguration implements io.micronaut.core.naming.Named {
 
   private String cipherSuite;
 
+  private String clientId;
+
+  private Map<String, String> destinations = Collections.emptyMap();
+
+  private Map<String, String> contentTypes = Collections.emptyMap();
+
+  private boolean bytesMessages = false;
+
+  private int streamChunkSize = 1024 * 1024;
+
+  private int connections = 0;
+
+  private Duration sendTimeout = Duration.ofSeconds(5);
+
+  private String healthDestination;
+
+  private Boolean shareConversations;
+
+  private PoolConfiguration pool = new PoolConfiguration();
+
+  private ListenerConfiguration listener = new ListenerConfiguration();
+
+  private CompressionConfiguration compression = new CompressionConfiguration();
+
+  private ReconnectConfiguration reconnect = new ReconnectConfiguration();
+
   public String getName() {
     return name;
   }
@@ -71,6 +106,17 @@ public class ServerConfiguration implements io.micronaut.core.naming.Named {
     this.port = port;
   }
 
+  /**
+   * @return The hosts of a multi-instance queue manager eg. {@code host1(1414),host2(1414)}, replacing the host and port
+   */
+  public String getConnectionNameList() {
+    return connectionNameList;
+  }
+
+  public void setConnectionNameList(String connectionNameList) {
+    this.connectionNameList = connectionNameList;
+  }
+
   public String getQueueManager() {
     return queueManager;
   }
@@ -119,8 +165,537 @@ public class ServerConfiguration implements io.micronaut.core.naming.Named {
     this.cipherSuite = cipherSuite;
   }
 
+  /**
+   * @return The client identifier of the connections, needed by unshared durable subscriptions
+   */
+  public String getClientId() {
+    return clientId;
+  }
+
+  public void setClientId(String clientId) {
+    this.clientId = clientId;
+  }
+
+  /**
+   * @return The destinations declared for the connection, keyed by the name used in {@code @JmsDestination}
+   */
+  public Map<String, String> getDestinations() {
+    return destinations;
+  }
+
+  public void setDestinations(@MapFormat(keyFormat = StringConvention.RAW) Map<String, String> destinations) {
+    this.destinations = destinations;
+  }
+
+  /**
+   * @return The content type used to encode bodies sent to a destination, keyed by the name used in {@code @JmsDestination}
+   */
+  public Map<String, String> getContentTypes() {
+    return contentTypes;
+  }
+
+  public void setContentTypes(@MapFormat(keyFormat = StringConvention.RAW) Map<String, String> contentTypes) {
+    this.contentTypes = contentTypes;
+  }
+
+  /**
+   * @return {@code true} if JSON bodies are written straight to a {@code BytesMessage} instead of a {@code TextMessage}
+   */
+  public boolean isBytesMessages() {
+    return bytesMessages;
+  }
+
+  public void setBytesMessages(boolean bytesMessages) {
+    this.bytesMessages = bytesMessages;
+  }
+
+  /**
+   * @return The maximum body size of each message in the group sent for an {@code InputStream} body
+   */
+  public int getStreamChunkSize() {
+    return streamChunkSize;
+  }
+
+  public void setStreamChunkSize(int streamChunkSize) {
+    this.streamChunkSize = streamChunkSize;
+  }
+
+  /**
+   * @return The number of connections shared by the listeners and clients of the connection, each listener consumer
+   * and pooled client context is then a session on one of them. 0, the default, opens a connection for every context
+   */
+  public int getConnections() {
+    return connections;
+  }
+
+  public void setConnections(int connections) {
+    this.connections = connections;
+  }
+
+  /**
+   * @return How long an asynchronous {@code @JmsClient} send waits for the queue manager to confirm it before failing
+   */
+  public Duration getSendTimeout() {
+    return sendTimeout;
+  }
+
+  public void setSendTimeout(Duration sendTimeout) {
+    this.sendTimeout = sendTimeout;
+  }
+
+  /**
+   * @return A queue browsed by the health check to measure the round trip to the queue manager, {@code null} to
+   * create and delete a temporary queue instead
+   */
+  public String getHealthDestination() {
+    return healthDestination;
+  }
+
+  public void setHealthDestination(String healthDestination) {
+    this.healthDestination = healthDestination;
+  }
+
+  /**
+   * @return {@code true} to let a connection share its TCP socket with other connections of the application using
+   * the SHARECNV limit of the channel, {@code false} to use a socket per connection, {@code null} for the MQ default
+   */
+  public Boolean getShareConversations() {
+    return shareConversations;
+  }
+
+  public void setShareConversations(Boolean shareConversations) {
+    this.shareConversations = shareConversations;
+  }
+
+  public PoolConfiguration getPool() {
+    return pool;
+  }
+
+  public void setPool(PoolConfiguration pool) {
+    this.pool = pool;
+  }
+
+  public ListenerConfiguration getListener() {
+    return listener;
+  }
+
+  public void setListener(ListenerConfiguration listener) {
+    this.listener = listener;
+  }
+
+  public CompressionConfiguration getCompression() {
+    return compression;
+  }
+
+  public void setCompression(CompressionConfiguration compression) {
+    this.compression = compression;
+  }
+
+  public ReconnectConfiguration getReconnect() {
+    return reconnect;
+  }
+
+  public void setReconnect(ReconnectConfiguration reconnect) {
+    this.reconnect = reconnect;
+  }
+
   @Override
   public String toString() {
     return "ServerConfiguration[" + getName() + "]";
   }
+
+  /**
+   * Configuration of the pool of {@link javax.jms.JMSContext}s used when sending messages from a
+   * {@link au.com.rma.micronaut.jms.annotation.JmsClient}. Configured under {@code mq-server.<name>.pool}.
+   */
+  @ConfigurationProperties("pool")
+  public static class PoolConfiguration {
+    private boolean enabled = true;
+
+    private int maxSize = 10;
+
+    private Duration maxWait = Duration.ofSeconds(5);
+
+    private Duration idleTimeout = Duration.ofMinutes(5);
+
+    private Duration evictionInterval = Duration.ofSeconds(30);
+
+    private boolean validateOnBorrow = true;
+
+    private Duration validationInterval = Duration.ofSeconds(30);
+
+    private Duration leakDetectionThreshold = Duration.ZERO;
+
+    private int prewarm = 0;
+
+    /**
+     * @return {@code false} to create (and close) a new context for every send
+     */
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    /**
+     * @return The maximum number of contexts (connections) the pool will open for each session mode, so a
+     * connection used for both plain and transacted sends can hold twice as many
+     */
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    /**
+     * @return How long a caller waits for a context when the pool is exhausted
+     */
+    public Duration getMaxWait() {
+      return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+      this.maxWait = maxWait;
+    }
+
+    /**
+     * @return How long an unused context stays in the pool before it is closed
+     */
+    public Duration getIdleTimeout() {
+      return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+      this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return How often idle contexts are evicted and leased contexts checked for leaks
+     */
+    public Duration getEvictionInterval() {
+      return evictionInterval;
+    }
+
+    public void setEvictionInterval(Duration evictionInterval) {
+      this.evictionInterval = evictionInterval;
+    }
+
+    /**
+     * @return {@code true} if a context that has been idle for longer than the validation interval is checked with
+     * a round trip to the queue manager before it is handed out
+     */
+    public boolean isValidateOnBorrow() {
+      return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+      this.validateOnBorrow = validateOnBorrow;
+    }
+
+    /**
+     * @return How long a context can be idle before it is validated, contexts used more recently are assumed to
+     * still be connected
+     */
+    public Duration getValidationInterval() {
+      return validationInterval;
+    }
+
+    public void setValidationInterval(Duration validationInterval) {
+      this.validationInterval = validationInterval;
+    }
+
+    /**
+     * @return How long a context can be leased before a warning is logged, {@link Duration#ZERO} disables detection
+     */
+    public Duration getLeakDetectionThreshold() {
+      return leakDetectionThreshold;
+    }
+
+    public void setLeakDetectionThreshold(Duration leakDetectionThreshold) {
+      this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    /**
+     * @return The number of contexts opened when the application starts, so the first sends do not wait to connect
+     */
+    public int getPrewarm() {
+      return prewarm;
+    }
+
+    public void setPrewarm(int prewarm) {
+      this.prewarm = prewarm;
+    }
+  }
+
+  /**
+   * Configuration shared by the {@link au.com.rma.micronaut.jms.annotation.JmsListener}s using a connection.
+   * Configured under {@code mq-server.<name>.listener}.
+   */
+  @ConfigurationProperties("listener")
+  public static class ListenerConfiguration {
+    private Duration scaleInterval = Duration.ofSeconds(5);
+
+    private Duration idleConsumerTimeout = Duration.ofMinutes(1);
+
+    private Duration groupTimeout = Duration.ofSeconds(30);
+
+    private int startupConcurrency = 8;
+
+    private boolean awaitAttached = false;
+
+    private Duration attachTimeout = Duration.ofSeconds(60);
+
+    private Duration redeliveryDelay = Duration.ofMillis(500);
+
+    private Duration maxRedeliveryDelay = Duration.ofSeconds(30);
+
+    private int maxRedeliveries = 0;
+
+    private String backoutDestination;
+
+    /**
+     * @return How often listeners with a concurrency range decide whether to add or remove consumers
+     */
+    public Duration getScaleInterval() {
+      return scaleInterval;
+    }
+
+    public void setScaleInterval(Duration scaleInterval) {
+      this.scaleInterval = scaleInterval;
+    }
+
+    /**
+     * @return How long a consumer above the minimum concurrency can go without a message before it is stopped
+     */
+    public Duration getIdleConsumerTimeout() {
+      return idleConsumerTimeout;
+    }
+
+    public void setIdleConsumerTimeout(Duration idleConsumerTimeout) {
+      this.idleConsumerTimeout = idleConsumerTimeout;
+    }
+
+    /**
+     * @return How long a listener reading an {@code InputStream} waits for the next message of a group
+     */
+    public Duration getGroupTimeout() {
+      return groupTimeout;
+    }
+
+    public void setGroupTimeout(Duration groupTimeout) {
+      this.groupTimeout = groupTimeout;
+    }
+
+    /**
+     * @return The maximum number of listener consumers making their first connection at the same time
+     */
+    public int getStartupConcurrency() {
+      return startupConcurrency;
+    }
+
+    public void setStartupConcurrency(int startupConcurrency) {
+      this.startupConcurrency = startupConcurrency;
+    }
+
+    /**
+     * @return {@code true} if application startup waits until every listener has a consumer attached
+     */
+    public boolean isAwaitAttached() {
+      return awaitAttached;
+    }
+
+    public void setAwaitAttached(boolean awaitAttached) {
+      this.awaitAttached = awaitAttached;
+    }
+
+    /**
+     * @return How long startup waits for the listeners to attach before failing
+     */
+    public Duration getAttachTimeout() {
+      return attachTimeout;
+    }
+
+    public void setAttachTimeout(Duration attachTimeout) {
+      this.attachTimeout = attachTimeout;
+    }
+
+    /**
+     * @return How long a pull, ordered, reactive or batch listener waits before receiving the messages redelivered
+     * after a failure, doubled for every consecutive failure
+     */
+    public Duration getRedeliveryDelay() {
+      return redeliveryDelay;
+    }
+
+    public void setRedeliveryDelay(Duration redeliveryDelay) {
+      this.redeliveryDelay = redeliveryDelay;
+    }
+
+    /**
+     * @return The longest a listener waits before receiving redelivered messages
+     */
+    public Duration getMaxRedeliveryDelay() {
+      return maxRedeliveryDelay;
+    }
+
+    public void setMaxRedeliveryDelay(Duration maxRedeliveryDelay) {
+      this.maxRedeliveryDelay = maxRedeliveryDelay;
+    }
+
+    /**
+     * @return How many times a message that fails on its own is redelivered before it is moved to the backout
+     * destination, {@code 0} to redeliver it until the queue manager backs it out
+     */
+    public int getMaxRedeliveries() {
+      return maxRedeliveries;
+    }
+
+    public void setMaxRedeliveries(int maxRedeliveries) {
+      this.maxRedeliveries = maxRedeliveries;
+    }
+
+    /**
+     * @return The queue receiving the messages that failed more than the maximum redeliveries, {@code null} to keep
+     * redelivering them until the queue manager backs them out
+     */
+    public String getBackoutDestination() {
+      return backoutDestination;
+    }
+
+    public void setBackoutDestination(String backoutDestination) {
+      this.backoutDestination = backoutDestination;
+    }
+  }
+
+  /**
+   * Compression of message bodies sent on a connection. Configured under {@code mq-server.<name>.compression}.
+   */
+  @ConfigurationProperties("compression")
+  public static class CompressionConfiguration {
+    private boolean enabled = false;
+
+    private String algorithm = "gzip";
+
+    private int threshold = 8192;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    /**
+     * @return The compression algorithm, one of {@code gzip}, {@code lz4} or {@code zstd}
+     */
+    public String getAlgorithm() {
+      return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+      this.algorithm = algorithm;
+    }
+
+    /**
+     * @return The size in bytes above which a body is compressed
+     */
+    public int getThreshold() {
+      return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+      this.threshold = threshold;
+    }
+  }
+
+  /**
+   * Reconnection of the listeners and reply consumers of a connection, and the automatic reconnection of the MQ
+   * client. Configured under {@code mq-server.<name>.reconnect}.
+   */
+  @ConfigurationProperties("reconnect")
+  public static class ReconnectConfiguration {
+    private Duration initialDelay = Duration.ofMillis(500);
+
+    private Duration maxDelay = Duration.ofSeconds(30);
+
+    private double multiplier = 2;
+
+    private double jitter = 0.2;
+
+    private String clientReconnect;
+
+    private Duration clientReconnectTimeout;
+
+    /**
+     * @return The delay before the first attempt to reconnect
+     */
+    public Duration getInitialDelay() {
+      return initialDelay;
+    }
+
+    public void setInitialDelay(Duration initialDelay) {
+      this.initialDelay = initialDelay;
+    }
+
+    /**
+     * @return The longest delay between attempts to reconnect
+     */
+    public Duration getMaxDelay() {
+      return maxDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+      this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return The factor the delay grows by after each failed attempt
+     */
+    public double getMultiplier() {
+      return multiplier;
+    }
+
+    public void setMultiplier(double multiplier) {
+      this.multiplier = multiplier;
+    }
+
+    /**
+     * @return The fraction of the delay randomly added or removed so instances do not reconnect in step
+     */
+    public double getJitter() {
+      return jitter;
+    }
+
+    public void setJitter(double jitter) {
+      this.jitter = jitter;
+    }
+
+    /**
+     * @return The MQ client reconnect option, one of {@code disabled}, {@code any} or {@code queue-manager},
+     * {@code null} for the channel default
+     */
+    public String getClientReconnect() {
+      return clientReconnect;
+    }
+
+    public void setClientReconnect(String clientReconnect) {
+      this.clientReconnect = clientReconnect;
+    }
+
+    /**
+     * @return How long the MQ client tries to reconnect before reporting the failure, {@code null} for the MQ default
+     */
+    public Duration getClientReconnectTimeout() {
+      return clientReconnectTimeout;
+    }
+
+    public void setClientReconnectTimeout(Duration clientReconnectTimeout) {
+      this.clientReconnectTimeout = clientReconnectTimeout;
+    }
+  }
 }
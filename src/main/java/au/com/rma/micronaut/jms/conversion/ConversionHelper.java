@@ -22,32 +22,107 @@
  */
 package au.com.rma.micronaut.jms.conversion;
 
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
+import au.com.rma.micronaut.jms.metrics.JmsMetrics;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.micronaut.core.convert.ConversionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.jms.BytesMessage;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Singleton
 public class ConversionHelper {
   private static Logger logger = LoggerFactory.getLogger(ConversionHelper.class);
 
-  private ConversionService conversionService;
+  private ConversionService<?> conversionService;
   private ObjectMapper objectMapper;
+  private JmsMetrics metrics;
+  private Map<String, MessageCodec> codecs = new ConcurrentHashMap<>();
+  private Map<String, MessageCompressor> compressors = new ConcurrentHashMap<>();
+  private Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+  private Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+  private Map<Class<?>, Boolean> convertibleFromString = new ConcurrentHashMap<>();
 
-  public ConversionHelper(ConversionService conversionService, ObjectMapper objectMapper) {
+  public ConversionHelper(ConversionService<?> conversionService, ObjectMapper objectMapper) {
+    this(conversionService, objectMapper, new JmsMetrics(), Collections.emptyList(), Collections.emptyList());
+  }
+
+  @Inject
+  public ConversionHelper(
+      ConversionService<?> conversionService,
+      ObjectMapper objectMapper,
+      JmsMetrics metrics,
+      List<MessageCodec> codecs,
+      List<MessageCompressor> compressors) {
     this.conversionService = conversionService;
     this.objectMapper = objectMapper;
+    this.metrics = metrics;
+    codecs.forEach(codec -> this.codecs.put(codec.getContentType(), codec));
+    this.compressors.put(GzipMessageCompressor.NAME, new GzipMessageCompressor());
+    compressors.forEach(compressor -> this.compressors.put(compressor.getName(), compressor));
+  }
+
+  /**
+   * @param contentType The content type of a message body
+   * @return {@code true} if a {@link MessageCodec} is registered for the content type
+   */
+  public boolean hasCodec(String contentType) {
+    return contentType != null && codecs.containsKey(contentType);
+  }
+
+  /**
+   * Resolve the reader, writer and conversion decision for a body type ahead of the first message, called with the
+   * types of listener and client method signatures.
+   *
+   * @param type The type of a message body
+   */
+  public void prepare(Class<?> type) {
+    if (type == null || type == void.class || type == Void.class || type == byte[].class
+        || Message.class.isAssignableFrom(type) || InputStream.class.isAssignableFrom(type) || ByteBuffer.class.isAssignableFrom(type)) {
+      return;
+    }
+    if (!canConvertFromString(type)) {
+      reader(type);
+      writer(type);
+    }
+  }
+
+  private boolean canConvertFromString(Class<?> type) {
+    return convertibleFromString.computeIfAbsent(type, key -> conversionService.canConvert(String.class, key));
+  }
+
+  private ObjectReader reader(Class<?> type) {
+    return readers.computeIfAbsent(type, objectMapper::readerFor);
+  }
+
+  private ObjectWriter writer(Class<?> type) {
+    return writers.computeIfAbsent(type, objectMapper::writerFor);
   }
 
-  @SuppressWarnings("unchecked")
   public <T,R> R convert(T source, Class<R> clazz) {
     if (source == null) {
       return null;
     }
-    return (R)conversionService.convert(source, clazz).get();
+    return conversionService.convert(source, clazz).get();
   }
 
   public <T,R> String convertObjectToString(T source) {
@@ -57,25 +132,317 @@ public class ConversionHelper {
     if (source.getClass().equals(String.class)) {
       return (String)source;
     }
+    long start = System.nanoTime();
     try {
-      return objectMapper.writeValueAsString(source);
+      return writer(source.getClass()).writeValueAsString(source);
     } catch (JsonProcessingException jpe) {
       throw new ConversionException("Failed to convert source to String value", jpe);
+    } finally {
+      metrics.conversion("serialize", System.nanoTime() - start);
     }
   }
 
   public Object convertMessageToObject(Object reply, Class<?> returnClass) {
-    Class replyClass = reply == null ? String.class : reply.getClass();
+    Class<?> replyClass = reply == null ? String.class : reply.getClass();
 
-    if (conversionService.canConvert(replyClass, returnClass)) {
+    boolean canConvert = replyClass == String.class
+        ? canConvertFromString(returnClass)
+        : conversionService.canConvert(replyClass, returnClass);
+    if (canConvert) {
       return conversionService.convert(reply, returnClass).get();
     }
 
+    long start = System.nanoTime();
     try {
       String json = reply.toString();
-      return objectMapper.readValue(json, returnClass);
+      return reader(returnClass).readValue(json);
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to convert response to " + returnClass, ioe);
+    } finally {
+      metrics.conversion("deserialize", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Serialize a message body ready to be written to a message. {@code String}, {@code byte[]} and
+   * {@link ByteBuffer} bodies are returned as is, other objects are written as JSON.
+   *
+   * @param source The body to serialize
+   * @param bytes {@code true} to write JSON straight to a {@code byte[]} rather than a {@code String}
+   * @return A {@code String}, {@code byte[]} or {@link ByteBuffer}
+   */
+  public Object serializeBody(Object source, boolean bytes) {
+    return serializeBody(source, null, bytes);
+  }
+
+  /**
+   * Serialize a message body using the {@link MessageCodec} for a content type, or as JSON when the content type
+   * is {@code null} or {@code application/json}.
+   *
+   * @param source The body to serialize
+   * @param contentType The content type of the body, or {@code null}
+   * @param bytes {@code true} to write JSON straight to a {@code byte[]} rather than a {@code String}
+   * @return A {@code String}, {@code byte[]} or {@link ByteBuffer}
+   */
+  public Object serializeBody(Object source, String contentType, boolean bytes) {
+    if (source == null || source instanceof String || source instanceof byte[] || source instanceof ByteBuffer) {
+      return source;
+    }
+    if (contentType != null && !MessageCodec.JSON.equals(contentType)) {
+      return encode(source, contentType);
+    }
+    if (!bytes) {
+      return convertObjectToString(source);
+    }
+    long start = System.nanoTime();
+    try {
+      return writer(source.getClass()).writeValueAsBytes(source);
     } catch (JsonProcessingException jpe) {
-      throw new ConversionException("Failed to convert response to " + returnClass, jpe);
+      throw new ConversionException("Failed to convert source to byte[] value", jpe);
+    } finally {
+      metrics.conversion("serialize", System.nanoTime() - start);
+    }
+  }
+
+  private byte[] encode(Object source, String contentType) {
+    MessageCodec codec = codecs.get(contentType);
+    if (codec == null) {
+      throw new ConversionException("No MessageCodec registered for content type " + contentType);
+    }
+    long start = System.nanoTime();
+    try {
+      return codec.encode(source);
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to encode source as " + contentType, ioe);
+    } finally {
+      metrics.conversion("serialize", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Compress a body returned by {@link #serializeBody(Object, String, boolean)} when compression is enabled and the
+   * body is larger than the threshold. Bodies that do not get smaller are returned uncompressed.
+   *
+   * @param body The serialized body
+   * @param compression The compression configuration of the connection
+   * @return The compressed body, or the body unchanged
+   */
+  public Object compressBody(Object body, ServerConfiguration.CompressionConfiguration compression) {
+    if (!compression.isEnabled() || bodySize(body) <= compression.getThreshold()) {
+      return body;
+    }
+    MessageCompressor compressor = compressors.get(compression.getAlgorithm());
+    if (compressor == null) {
+      throw new ConversionException("No MessageCompressor registered for " + compression.getAlgorithm());
+    }
+
+    byte[] data;
+    if (body instanceof String) {
+      data = ((String)body).getBytes(StandardCharsets.UTF_8);
+    } else if (body instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer)body).duplicate();
+      data = new byte[buffer.remaining()];
+      buffer.get(data);
+    } else {
+      data = (byte[])body;
+    }
+
+    long start = System.nanoTime();
+    try {
+      byte[] compressed = compressor.compress(data);
+      return compressed.length < data.length ? new CompressedBody(compressor.getName(), compressed) : body;
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to compress body with " + compressor.getName(), ioe);
+    } finally {
+      metrics.conversion("compress", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return The number of bytes the body is sent as, strings are measured by their UTF-8 encoding
+   */
+  static int bodySize(Object body) {
+    if (body instanceof String) {
+      return utf8Length((String)body);
+    }
+    if (body instanceof byte[]) {
+      return ((byte[])body).length;
+    }
+    if (body instanceof ByteBuffer) {
+      return ((ByteBuffer)body).remaining();
+    }
+    return 0;
+  }
+
+  private static int utf8Length(String text) {
+    int length = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // an unpaired surrogate is encoded as '?'
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Create a message for a body returned by {@link #serializeBody(Object, boolean)}, binary bodies are sent as a
+   * {@link BytesMessage} and everything else as a {@link TextMessage}.
+   */
+  public Message createMessage(JMSContext context, Object body) throws JMSException {
+    if (body instanceof CompressedBody) {
+      CompressedBody compressed = (CompressedBody)body;
+      BytesMessage message = context.createBytesMessage();
+      message.writeBytes(compressed.data);
+      message.setStringProperty(MessageCompressor.CONTENT_ENCODING_PROPERTY, compressed.encoding);
+      return message;
+    }
+    if (body instanceof byte[]) {
+      BytesMessage message = context.createBytesMessage();
+      message.writeBytes((byte[])body);
+      return message;
+    }
+    if (body instanceof ByteBuffer) {
+      ByteBuffer buffer = (ByteBuffer)body;
+      BytesMessage message = context.createBytesMessage();
+      if (buffer.hasArray()) {
+        message.writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      } else {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        message.writeBytes(data);
+      }
+      return message;
+    }
+    return context.createTextMessage((String)body);
+  }
+
+  /**
+   * Create a message for a body returned by {@link #serializeBody(Object, String, boolean)}, setting the
+   * {@value MessageCodec#CONTENT_TYPE_PROPERTY} property when a content type is given.
+   */
+  public Message createMessage(JMSContext context, Object body, String contentType) throws JMSException {
+    Message message = createMessage(context, body);
+    if (contentType != null) {
+      message.setStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY, contentType);
+    }
+    return message;
+  }
+
+  /**
+   * Read the body of a message as the given type. Messages with a {@value MessageCodec#CONTENT_TYPE_PROPERTY}
+   * property that has a registered {@link MessageCodec} are decoded by the codec. The body of a {@link BytesMessage}
+   * is parsed directly from its bytes, it is only decoded to a {@code String} when the target type is converted from
+   * a {@code String}.
+   */
+  public Object readBody(Message message, Class<?> type) throws JMSException {
+    if (Message.class.isAssignableFrom(type)) {
+      return message;
+    }
+    if (type == InputStream.class) {
+      byte[] data = bodyBytes(message);
+      return data == null ? null : new ByteArrayInputStream(data);
+    }
+    String contentType = codecs.isEmpty() ? null : message.getStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY);
+    if (hasCodec(contentType) && type != byte[].class && type != ByteBuffer.class) {
+      return decode(message, contentType, type);
+    }
+    if (!(message instanceof BytesMessage)) {
+      return convertMessageToObject(message.getBody(String.class), type);
+    }
+
+    byte[] data = bodyBytes(message);
+    if (type == byte[].class) {
+      return data;
+    }
+    if (type == ByteBuffer.class) {
+      return data == null ? null : ByteBuffer.wrap(data);
+    }
+    if (data == null) {
+      return null;
+    }
+    if (canConvertFromString(type)) {
+      return convertMessageToObject(new String(data, StandardCharsets.UTF_8), type);
+    }
+
+    long start = System.nanoTime();
+    try {
+      return reader(type).readValue(data);
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to convert response to " + type, ioe);
+    } finally {
+      metrics.conversion("deserialize", System.nanoTime() - start);
+    }
+  }
+
+  private Object decode(Message message, String contentType, Class<?> type) throws JMSException {
+    byte[] data = bodyBytes(message);
+    if (data == null) {
+      return null;
+    }
+    long start = System.nanoTime();
+    try {
+      return codecs.get(contentType).decode(data, type);
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to decode " + contentType + " body to " + type, ioe);
+    } finally {
+      metrics.conversion("deserialize", System.nanoTime() - start);
+    }
+  }
+
+  private byte[] bodyBytes(Message message) throws JMSException {
+    if (message instanceof BytesMessage) {
+      byte[] data = message.getBody(byte[].class);
+      String encoding = message.getStringProperty(MessageCompressor.CONTENT_ENCODING_PROPERTY);
+      return data == null || encoding == null ? data : decompress(data, encoding);
+    }
+    String text = message.getBody(String.class);
+    return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] decompress(byte[] data, String encoding) {
+    MessageCompressor compressor = compressors.get(encoding);
+    if (compressor == null) {
+      throw new ConversionException("No MessageCompressor registered for " + encoding);
+    }
+    long start = System.nanoTime();
+    try {
+      return compressor.decompress(data);
+    } catch (IOException ioe) {
+      throw new ConversionException("Failed to decompress body with " + encoding, ioe);
+    } finally {
+      metrics.conversion("decompress", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * A body compressed by {@link #compressBody}, sent as a {@code BytesMessage} flagged with its encoding.
+   */
+  public static final class CompressedBody {
+    private final String encoding;
+    private final byte[] data;
+
+    CompressedBody(String encoding, byte[] data) {
+      this.encoding = encoding;
+      this.data = data;
+    }
+
+    public String getEncoding() {
+      return encoding;
+    }
+
+    public byte[] getData() {
+      return data;
     }
   }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.conversion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link MessageCompressor} using the GZIP support of the JDK, always available.
+ */
+public class GzipMessageCompressor implements MessageCompressor {
+  public static final String NAME = "gzip";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+    try (OutputStream stream = new GZIPOutputStream(compressed)) {
+      stream.write(data);
+    }
+    return compressed.toByteArray();
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    return readFully(new GZIPInputStream(new ByteArrayInputStream(data)), data.length * 4);
+  }
+
+  static byte[] readFully(InputStream input, int sizeHint) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(sizeHint);
+    byte[] buffer = new byte[8192];
+    try (InputStream stream = input) {
+      int read;
+      while ((read = stream.read(buffer)) >= 0) {
+        output.write(buffer, 0, read);
+      }
+    }
+    return output.toByteArray();
+  }
+}
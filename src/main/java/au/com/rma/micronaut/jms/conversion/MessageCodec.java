@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.conversion;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes message bodies for a content type. Codecs are beans, so support for formats such as
+ * Protobuf or Avro is added by registering a {@code MessageCodec} bean for their content type.
+ */
+public interface MessageCodec {
+  /**
+   * The message property carrying the content type of the body.
+   */
+  String CONTENT_TYPE_PROPERTY = "contentType";
+
+  String JSON = "application/json";
+
+  /**
+   * @return The content type handled by this codec eg. application/cbor
+   */
+  String getContentType();
+
+  byte[] encode(Object value) throws IOException;
+
+  <T> T decode(byte[] data, Class<T> type) throws IOException;
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.conversion;
+
+import java.io.IOException;
+
+/**
+ * Compresses message bodies. Compressed bodies are sent in a {@code BytesMessage} with the name of the compressor
+ * in the {@code contentEncoding} property, so the receiver can select the same compressor.
+ */
+public interface MessageCompressor {
+  /**
+   * The message property carrying the name of the compressor used for the body.
+   */
+  String CONTENT_ENCODING_PROPERTY = "contentEncoding";
+
+  /**
+   * @return The name of the compression algorithm eg. gzip
+   */
+  String getName();
+
+  byte[] compress(byte[] data) throws IOException;
+
+  byte[] decompress(byte[] data) throws IOException;
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.conversion;
+
+import com.github.luben.zstd.Zstd;
+import io.micronaut.context.annotation.Requires;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+
+/**
+ * A {@link MessageCompressor} using Zstandard, available when {@code zstd-jni} is on the classpath.
+ */
+@Singleton
+@Requires(classes = Zstd.class)
+public class ZstdMessageCompressor implements MessageCompressor {
+  public static final String NAME = "zstd";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) {
+    return Zstd.compress(data);
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    long size = Zstd.decompressedSize(data);
+    if (size <= 0 || size > Integer.MAX_VALUE) {
+      throw new IOException("Unable to determine the decompressed size of a zstd body");
+    }
+    return Zstd.decompress(data, (int)size);
+  }
+}
@@ -22,53 +22,185 @@
  */
 package au.com.rma.micronaut.jms.health;
 
+import au.com.rma.micronaut.jms.jms.JmsHelper;
+import au.com.rma.micronaut.jms.jms.JmsListenerContainer;
 import au.com.rma.micronaut.jms.jms.NamedConnectionFactory;
 import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.health.HealthStatus;
 import io.micronaut.management.endpoint.health.HealthEndpoint;
 import io.micronaut.management.health.indicator.AbstractHealthIndicator;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Named;
 import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Reports the health of each MQ connection and its listeners. Connections are probed in the background with a
+ * round trip to the queue manager on a context used only for probes, so a health request only reads the result of
+ * the last probe. A result older than the TTL is reported as {@code UNKNOWN}.
+ *
+ * Listeners without an attached consumer are counted in the details of their connection but do not change its
+ * status, as a listener that is starting or reconnecting after a failover detaches for a while.
+ */
 @Singleton
 @Requires(property = HealthEndpoint.PREFIX + "jms-mq.enabled", notEquals = "false")
 @Requires(beans = HealthEndpoint.class)
-public class JmsMQHealthIndicator extends AbstractHealthIndicator<Map<String, String>> {
+public class JmsMQHealthIndicator extends AbstractHealthIndicator<Map<String, Object>> {
   private static final Logger logger = LoggerFactory.getLogger(JmsMQHealthIndicator.class);
   private List<NamedConnectionFactory> connectionFactories;
+  private JmsHelper jmsHelper;
+  private TaskScheduler taskScheduler;
+  private ExecutorService executorService;
+  private Duration interval;
+  private Duration ttl;
+  private Map<String, Probe> probes = new ConcurrentHashMap<>();
+  private Set<String> running = ConcurrentHashMap.newKeySet();
+  private ScheduledFuture<?> prober;
 
-  public JmsMQHealthIndicator(List<NamedConnectionFactory> connectionFactories) {
+  public JmsMQHealthIndicator(
+      List<NamedConnectionFactory> connectionFactories,
+      JmsHelper jmsHelper,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler taskScheduler,
+      @Named(TaskExecutors.IO) ExecutorService executorService,
+      @Value("${" + HealthEndpoint.PREFIX + "jms-mq.interval:10s}") Duration interval,
+      @Value("${" + HealthEndpoint.PREFIX + "jms-mq.ttl:30s}") Duration ttl) {
     this.connectionFactories = connectionFactories;
+    this.jmsHelper = jmsHelper;
+    this.taskScheduler = taskScheduler;
+    this.executorService = executorService;
+    this.interval = interval;
+    this.ttl = ttl;
   }
 
-  @Override
-  protected Map<String, String> getHealthInformation() {
-    logger.info("Checking Health");
-    healthStatus = HealthStatus.UP;
-    return connectionFactories.stream()
-        .collect(Collectors.toMap(
-            NamedConnectionFactory::getName,
-            this::getConnectionStatus));
+  @PostConstruct
+  void start() {
+    prober = taskScheduler.scheduleWithFixedDelay(Duration.ZERO, interval, this::probe);
+  }
+
+  @PreDestroy
+  void stop() {
+    if (prober != null) {
+      prober.cancel(false);
+    }
   }
 
-  private String getConnectionStatus(NamedConnectionFactory cf) {
+  /**
+   * Probe every connection in parallel, so a connection that is slow to fail does not delay the others. A
+   * connection whose last probe is still running is skipped until it completes.
+   */
+  void probe() {
+    connectionFactories.forEach(factory -> {
+      String name = factory.getName();
+      if (!running.add(name)) {
+        return;
+      }
+      try {
+        executorService.submit(() -> probe(name));
+      } catch (RejectedExecutionException exception) {
+        running.remove(name);
+      }
+    });
+  }
+
+  private void probe(String name) {
     try {
-      cf.createContext();
-      return "UP";
+      probes.put(name, new Probe(true, jmsHelper.probe(name), null));
     } catch (Exception exception) {
-      healthStatus = HealthStatus.DOWN;
-      logger.error("Connection to MQ server failed", exception);
-      return "DOWN";
+      logger.error("Connection to MQ server {} failed", name, exception);
+      probes.put(name, new Probe(false, 0, exception.getMessage()));
+    } finally {
+      running.remove(name);
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getHealthInformation() {
+    HealthStatus status = HealthStatus.UP;
+    Map<String, Object> details = new LinkedHashMap<>();
+    List<JmsListenerContainer> listeners = jmsHelper.getListeners();
+    long now = System.currentTimeMillis();
+
+    for (NamedConnectionFactory factory : connectionFactories) {
+      String name = factory.getName();
+      Map<String, Object> connection = new LinkedHashMap<>();
+      Probe probe = probes.get(name);
+      HealthStatus connectionStatus;
+      if (probe == null || now - probe.probedAt > ttl.toMillis()) {
+        connectionStatus = HealthStatus.UNKNOWN;
+      } else {
+        connectionStatus = probe.up ? HealthStatus.UP : HealthStatus.DOWN;
+        connection.put("latency-ms", TimeUnit.NANOSECONDS.toMillis(probe.latency));
+        connection.put("probed-at", Instant.ofEpochMilli(probe.probedAt).toString());
+        if (probe.error != null) {
+          connection.put("error", probe.error);
+        }
+      }
+
+      List<JmsListenerContainer> connectionListeners = listeners.stream()
+          .filter(listener -> listener.getConnectionName().equals(name))
+          .collect(Collectors.toList());
+      connection.put("status", connectionStatus.getName());
+      connection.put("detached-listeners", connectionListeners.stream()
+          .filter(listener -> listener.getConnectedConsumerCount() == 0)
+          .count());
+      connection.put("listeners", connectionListeners.stream().map(this::describe).collect(Collectors.toList()));
+      details.put(name, connection);
+
+      if (connectionStatus == HealthStatus.DOWN) {
+        status = HealthStatus.DOWN;
+      } else if (connectionStatus == HealthStatus.UNKNOWN && status == HealthStatus.UP) {
+        status = HealthStatus.UNKNOWN;
+      }
     }
+    healthStatus = status;
+    return details;
+  }
+
+  private Map<String, Object> describe(JmsListenerContainer listener) {
+    Map<String, Object> details = new LinkedHashMap<>();
+    details.put("destination", listener.getOptions().getDestination());
+    details.put("consumers", listener.getConsumerCount());
+    details.put("attached", listener.getConnectedConsumerCount() > 0);
+    long lastMessage = listener.getLastMessage();
+    if (lastMessage > 0) {
+      details.put("last-message", Instant.ofEpochMilli(lastMessage).toString());
+    }
+    return details;
   }
 
   @Override
   protected String getName() {
     return "micronaut-jms-mq";
   }
+
+  private static class Probe {
+    private final boolean up;
+    private final long latency;
+    private final String error;
+    private final long probedAt = System.currentTimeMillis();
+
+    private Probe(boolean up, long latency, String error) {
+      this.up = up;
+      this.latency = latency;
+      this.error = error;
+    }
+  }
 }
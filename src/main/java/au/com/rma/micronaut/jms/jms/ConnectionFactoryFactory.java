@@ -23,8 +23,10 @@
 package au.com.rma.micronaut.jms.jms;
 
 import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ReconnectConfiguration;
 import com.ibm.msg.client.jms.JmsConnectionFactory;
 import com.ibm.msg.client.jms.JmsFactoryFactory;
+import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.EachBean;
 import io.micronaut.context.annotation.Factory;
 import org.slf4j.Logger;
@@ -32,6 +34,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.jms.JMSException;
 
+import static com.ibm.msg.client.jms.JmsConstants.CLIENT_ID;
 import static com.ibm.msg.client.jms.JmsConstants.WMQ_PROVIDER;
 import static com.ibm.msg.client.wmq.common.CommonConstants.*;
 
@@ -40,12 +43,17 @@ public class ConnectionFactoryFactory {
   private static final Logger logger = LoggerFactory.getLogger(ConnectionFactoryFactory.class);
 
   @EachBean(ServerConfiguration.class)
+  @Bean(preDestroy = "close")
   public NamedConnectionFactory createConnectionFactory(ServerConfiguration config) throws JMSException {
     JmsFactoryFactory factory = JmsFactoryFactory.getInstance(WMQ_PROVIDER);
     JmsConnectionFactory connectionFactory = factory.createConnectionFactory();
 
-    connectionFactory.setStringProperty(WMQ_HOST_NAME, config.getHost());
-    connectionFactory.setIntProperty(WMQ_PORT, config.getPort());
+    if (config.getConnectionNameList() != null) {
+      connectionFactory.setStringProperty(WMQ_CONNECTION_NAME_LIST, config.getConnectionNameList());
+    } else {
+      connectionFactory.setStringProperty(WMQ_HOST_NAME, config.getHost());
+      connectionFactory.setIntProperty(WMQ_PORT, config.getPort());
+    }
     if (config.getChannel() != null) {
       connectionFactory.setStringProperty(WMQ_CHANNEL, config.getChannel());
     }
@@ -64,6 +72,37 @@ public class ConnectionFactoryFactory {
     if (config.getCipherSuite() != null) {
       connectionFactory.setStringProperty(WMQ_SSL_CIPHER_SUITE, config.getCipherSuite());
     }
-    return new NamedConnectionFactory(config.getName(), connectionFactory);
+    ReconnectConfiguration reconnect = config.getReconnect();
+    if (reconnect.getClientReconnect() != null) {
+      connectionFactory.setIntProperty(WMQ_CLIENT_RECONNECT_OPTIONS, clientReconnectOption(reconnect.getClientReconnect()));
+    }
+    if (reconnect.getClientReconnectTimeout() != null) {
+      connectionFactory.setIntProperty(WMQ_CLIENT_RECONNECT_TIMEOUT, (int)reconnect.getClientReconnectTimeout().getSeconds());
+    }
+    if (config.getClientId() != null && config.getConnections() == 0) {
+      // shared connections set the client id themselves, once per connection
+      connectionFactory.setStringProperty(CLIENT_ID, config.getClientId());
+    }
+    if (config.getShareConversations() != null) {
+      connectionFactory.setIntProperty(WMQ_SHARE_CONV_ALLOWED,
+          config.getShareConversations() ? WMQ_SHARE_CONV_ALLOWED_YES : WMQ_SHARE_CONV_ALLOWED_NO);
+    }
+    logger.debug("Creating connection factory {} sharing {} connections", config.getName(), config.getConnections());
+    return new NamedConnectionFactory(config.getName(), connectionFactory, config.getConnections(), config.getClientId(),
+        new JmsReconnectCoordinator(reconnect, config.getListener().getStartupConcurrency()));
+  }
+
+  private static int clientReconnectOption(String option) {
+    switch (option) {
+      case "disabled":
+        return WMQ_CLIENT_RECONNECT_DISABLED;
+      case "any":
+        return WMQ_CLIENT_RECONNECT;
+      case "queue-manager":
+        return WMQ_CLIENT_RECONNECT_Q_MGR;
+      default:
+        throw new IllegalArgumentException("Invalid client reconnect option " + option
+            + " expected one of disabled, any or queue-manager");
+    }
   }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.aop.JmsClientException;
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextHandler;
+import io.micronaut.scheduling.TaskScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Collects messages sent on a connection and sends them in a single transaction once {@code maxMessages}
+ * have been collected or the first message has waited {@code maxDelay}, so the queue manager performs one
+ * log write per batch rather than one per persistent message.
+ *
+ * Batches flushed after {@code maxDelay} are written on a thread owned by the sender so JMS I/O never blocks the
+ * shared scheduler. A batch that fails to commit is sent again up to {@code retries} times, after that the future
+ * of every send in it fails and the loss of fire-and-forget sends, which nobody waits for, is logged at error.
+ */
+public class JmsBatchSender implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JmsBatchSender.class);
+
+  private final JmsHelper jmsHelper;
+  private final String name;
+  private final int maxMessages;
+  private final Duration maxDelay;
+  private final int retries;
+  private final TaskScheduler taskScheduler;
+  private final ExecutorService flushExecutor;
+
+  private List<PendingSend> batch = new ArrayList<>();
+  private ScheduledFuture<?> scheduledFlush;
+  private boolean closed;
+
+  public JmsBatchSender(JmsHelper jmsHelper, String name, int maxMessages, Duration maxDelay, TaskScheduler taskScheduler) {
+    this(jmsHelper, name, maxMessages, maxDelay, 0, taskScheduler);
+  }
+
+  public JmsBatchSender(
+      JmsHelper jmsHelper,
+      String name,
+      int maxMessages,
+      Duration maxDelay,
+      int retries,
+      TaskScheduler taskScheduler) {
+    if (maxMessages < 1) {
+      throw new IllegalArgumentException("@JmsBatch maxMessages must be at least 1");
+    }
+    if (retries < 0) {
+      throw new IllegalArgumentException("@JmsBatch retries can not be negative");
+    }
+    this.jmsHelper = jmsHelper;
+    this.name = name;
+    this.maxMessages = maxMessages;
+    this.maxDelay = maxDelay;
+    this.retries = retries;
+    this.taskScheduler = taskScheduler;
+    this.flushExecutor = ListenerThreads.newSingleThreadExecutor("jms-batch-" + name);
+  }
+
+  /**
+   * Add a send to the current batch. When this fills the batch it is committed on the calling thread.
+   *
+   * @param handler Creates and sends the message using the transacted context
+   * @param fireAndForget True when the caller discards the returned future, a failure of the batch is then
+   *                      logged as lost messages
+   * @return A future completed once the batch containing the message has been committed
+   * @throws JmsClientException If the sender has been closed
+   */
+  public CompletableFuture<Void> send(ContextHandler handler, boolean fireAndForget) {
+    PendingSend pending = new PendingSend(handler, fireAndForget);
+    List<PendingSend> full = null;
+    synchronized (this) {
+      if (closed) {
+        throw new JmsClientException("Batch sender for " + name + " has been closed");
+      }
+      batch.add(pending);
+      if (batch.size() >= maxMessages) {
+        full = drain();
+      } else if (batch.size() == 1) {
+        scheduledFlush = taskScheduler.schedule(maxDelay, this::flushLater);
+      }
+    }
+    if (full != null) {
+      write(full);
+    }
+    return pending.sent;
+  }
+
+  /**
+   * Commit the messages collected so far.
+   */
+  public void flush() {
+    List<PendingSend> sends;
+    synchronized (this) {
+      sends = drain();
+    }
+    write(sends);
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    flush();
+    flushExecutor.shutdown();
+  }
+
+  private void flushLater() {
+    try {
+      flushExecutor.execute(this::flush);
+    } catch (RejectedExecutionException exception) {
+      // Closed while the flush was scheduled, close() has already written the batch
+      logger.debug("Batch sender for {} closed before its scheduled flush", name);
+    }
+  }
+
+  private List<PendingSend> drain() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    List<PendingSend> sends = batch;
+    batch = new ArrayList<>();
+    return sends;
+  }
+
+  private void write(List<PendingSend> sends) {
+    if (sends.isEmpty()) {
+      return;
+    }
+    RuntimeException failure = null;
+    for (int attempt = 0; attempt <= retries; attempt++) {
+      try {
+        jmsHelper.withTransactedClient(name, context -> {
+          for (PendingSend pending : sends) {
+            pending.handler.usingContext(context);
+          }
+        });
+        sends.forEach(pending -> pending.sent.complete(null));
+        return;
+      } catch (RuntimeException exception) {
+        failure = exception;
+        if (attempt < retries) {
+          logger.warn("Failed to send batch of {} messages on {}, retrying", sends.size(), name, exception);
+        }
+      }
+    }
+
+    long lost = sends.stream().filter(pending -> pending.fireAndForget).count();
+    logger.error("Failed to send batch of {} messages on {}, {} fire-and-forget messages were lost",
+        sends.size(), name, lost, failure);
+    for (PendingSend pending : sends) {
+      pending.sent.completeExceptionally(failure);
+    }
+  }
+
+  private static class PendingSend {
+    private final ContextHandler handler;
+    private final boolean fireAndForget;
+    private final CompletableFuture<Void> sent = new CompletableFuture<>();
+
+    private PendingSend(ContextHandler handler, boolean fireAndForget) {
+      this.handler = handler;
+      this.fireAndForget = fireAndForget;
+    }
+  }
+}
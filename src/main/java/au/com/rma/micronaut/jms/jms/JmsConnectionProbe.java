@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.*;
+
+/**
+ * Checks a connection can reach the queue manager using a context of its own, so a probe never waits for a pooled
+ * context and a slow queue manager can not starve the clients of contexts.
+ *
+ * Every probe makes a round trip to the queue manager, browsing the health destination of the connection when one
+ * is configured, otherwise creating and deleting a temporary queue. The context is closed when a probe fails and
+ * the next probe connects again.
+ */
+public class JmsConnectionProbe implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JmsConnectionProbe.class);
+  private final NamedConnectionFactory connectionFactory;
+  private final JmsDestinationResolver destinationResolver;
+  private final String healthDestination;
+
+  private JMSContext context;
+
+  public JmsConnectionProbe(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      String healthDestination) {
+    this.connectionFactory = connectionFactory;
+    this.destinationResolver = destinationResolver;
+    this.healthDestination = healthDestination;
+  }
+
+  /**
+   * @return The nanoseconds the round trip took, including connecting after an earlier failure
+   * @throws JMSException If the queue manager can not be reached
+   */
+  public synchronized long probe() throws JMSException {
+    long start = System.nanoTime();
+    try {
+      if (context == null) {
+        context = connectionFactory.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+      }
+      if (healthDestination == null) {
+        context.createTemporaryQueue().delete();
+      } else {
+        Queue queue = (Queue)destinationResolver.resolve(healthDestination, JmsDestinationType.QUEUE, context);
+        try (QueueBrowser browser = context.createBrowser(queue)) {
+          browser.getEnumeration().hasMoreElements();
+        }
+      }
+    } catch (JMSException | JMSRuntimeException exception) {
+      close();
+      throw exception;
+    }
+    return System.nanoTime() - start;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (context != null) {
+      try {
+        context.close();
+      } catch (JMSRuntimeException exception) {
+        logger.debug("Error closing probe context for {}", connectionFactory.getName(), exception);
+      }
+      context = null;
+    }
+  }
+}
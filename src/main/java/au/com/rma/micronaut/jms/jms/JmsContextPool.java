@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.aop.JmsClientException;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.PoolConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.JMSRuntimeException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A bounded pool of {@link JMSContext}s created from a single {@link NamedConnectionFactory}.
+ *
+ * Contexts are leased to one thread at a time (a {@link JMSContext} is not thread safe) and returned
+ * to the pool once the caller has finished with them, so steady state sends reuse a warm connection
+ * instead of performing a new connect and handshake with the queue manager.
+ *
+ * A context that has been idle for longer than the validation interval is checked with a round trip to the queue
+ * manager before it is leased again. Each session mode has a pool of its own, bounded by the maximum size.
+ */
+public class JmsContextPool implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JmsContextPool.class);
+
+  private final NamedConnectionFactory connectionFactory;
+  private final PoolConfiguration configuration;
+  private final int sessionMode;
+  private final Semaphore permits;
+  private final Deque<PooledContext> idle = new ConcurrentLinkedDeque<>();
+  private final Set<PooledContext> leased = ConcurrentHashMap.newKeySet();
+  private volatile boolean closed;
+
+  public JmsContextPool(NamedConnectionFactory connectionFactory, PoolConfiguration configuration) {
+    this(connectionFactory, configuration, JMSContext.AUTO_ACKNOWLEDGE);
+  }
+
+  public JmsContextPool(NamedConnectionFactory connectionFactory, PoolConfiguration configuration, int sessionMode) {
+    this.connectionFactory = connectionFactory;
+    this.configuration = configuration;
+    this.sessionMode = sessionMode;
+    this.permits = new Semaphore(configuration.getMaxSize(), true);
+  }
+
+  public String getName() {
+    return connectionFactory.getName();
+  }
+
+  public int getSessionMode() {
+    return sessionMode;
+  }
+
+  /**
+   * Lease a context from the pool, waiting up to {@link PoolConfiguration#getMaxWait()} if all the
+   * contexts are in use. The context must be handed back using {@link #release(PooledContext)}.
+   *
+   * @return The leased context
+   */
+  public PooledContext borrow() {
+    if (closed) {
+      throw new JmsClientException("JMS context pool " + getName() + " has been closed");
+    }
+    acquirePermit();
+    try {
+      PooledContext pooled;
+      while ((pooled = idle.pollFirst()) != null && !isValid(pooled)) {
+        destroy(pooled);
+      }
+      if (pooled == null) {
+        pooled = create();
+      }
+      pooled.lease(configuration.getLeakDetectionThreshold().isZero() ? null : new Exception("Context leased here"));
+      leased.add(pooled);
+      return pooled;
+    } catch (RuntimeException exception) {
+      permits.release();
+      throw exception;
+    }
+  }
+
+  /**
+   * Return a leased context to the pool. Contexts that have been invalidated are closed.
+   *
+   * @param pooled The context returned by {@link #borrow()}
+   */
+  public void release(PooledContext pooled) {
+    if (!leased.remove(pooled)) {
+      return;
+    }
+    try {
+      if (closed || pooled.isBroken()) {
+        destroy(pooled);
+      } else {
+        pooled.touch();
+        idle.offerFirst(pooled);
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Open contexts until the pool holds {@code count} of them, or as many as it can hold.
+   *
+   * @param count The number of contexts to open
+   */
+  public void prewarm(int count) {
+    List<PooledContext> created = new ArrayList<>();
+    try {
+      while (created.size() < Math.min(count, configuration.getMaxSize())) {
+        created.add(borrow());
+      }
+    } finally {
+      created.forEach(this::release);
+    }
+  }
+
+  /**
+   * Close contexts that have been idle longer than {@link PoolConfiguration#getIdleTimeout()} and
+   * report contexts that have been leased longer than {@link PoolConfiguration#getLeakDetectionThreshold()}.
+   */
+  public void evict() {
+    if (closed) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long idleTimeout = configuration.getIdleTimeout().toMillis();
+    idle.forEach(pooled -> {
+      if (now - pooled.getLastUsed() > idleTimeout && idle.remove(pooled)) {
+        logger.debug("Closing idle JMS context for {}", getName());
+        destroy(pooled);
+      }
+    });
+
+    Duration threshold = configuration.getLeakDetectionThreshold();
+    if (!threshold.isZero()) {
+      leased.forEach(pooled -> {
+        if (now - pooled.getLeasedAt() > threshold.toMillis() && pooled.reportLeak()) {
+          logger.warn("JMS context for {} has been leased by {} for more than {}ms, possible leak",
+              getName(), pooled.getLeasedBy(), threshold.toMillis(), pooled.getLeaseTrace());
+        }
+      });
+    }
+  }
+
+  public int getActive() {
+    return leased.size();
+  }
+
+  public int getIdle() {
+    return idle.size();
+  }
+
+  public int getMaxSize() {
+    return configuration.getMaxSize();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    PooledContext pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      destroy(pooled);
+    }
+  }
+
+  private void acquirePermit() {
+    try {
+      if (!permits.tryAcquire(configuration.getMaxWait().toMillis(), MILLISECONDS)) {
+        throw new JmsClientException("Timeout waiting for a JMS context from pool " + getName());
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new JmsClientException("Interrupted waiting for a JMS context from pool " + getName(), exception);
+    }
+  }
+
+  private PooledContext create() {
+    logger.debug("Creating new JMS context for {}", getName());
+    PooledContext pooled = new PooledContext(sessionMode == JMSContext.AUTO_ACKNOWLEDGE
+        ? connectionFactory.createContext()
+        : connectionFactory.createContext(sessionMode));
+    pooled.getContext().setExceptionListener(pooled);
+    return pooled;
+  }
+
+  private boolean isValid(PooledContext pooled) {
+    if (pooled.isBroken()) {
+      return false;
+    }
+    if (!configuration.isValidateOnBorrow()
+        || System.currentTimeMillis() - pooled.getLastUsed() < configuration.getValidationInterval().toMillis()) {
+      return true;
+    }
+    try {
+      // the metadata of a context is answered by the client, a temporary queue needs the queue manager
+      pooled.getContext().createTemporaryQueue().delete();
+      return true;
+    } catch (JMSException | JMSRuntimeException exception) {
+      logger.debug("Discarding invalid JMS context for {}", getName(), exception);
+      return false;
+    }
+  }
+
+  private void destroy(PooledContext pooled) {
+    try {
+      pooled.getContext().close();
+    } catch (JMSRuntimeException exception) {
+      logger.debug("Error closing JMS context for {}", getName(), exception);
+    }
+  }
+
+  /**
+   * A {@link JMSContext} owned by a {@link JmsContextPool}.
+   */
+  public static class PooledContext implements ExceptionListener {
+    private final JMSContext context;
+    private volatile boolean broken;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private volatile long leasedAt;
+    private volatile String leasedBy;
+    private volatile Exception leaseTrace;
+    private volatile boolean leakReported;
+
+    PooledContext(JMSContext context) {
+      this.context = context;
+    }
+
+    public JMSContext getContext() {
+      return context;
+    }
+
+    /**
+     * Mark the context as unusable so it is closed rather than returned to the pool.
+     */
+    public void invalidate() {
+      broken = true;
+    }
+
+    public boolean isBroken() {
+      return broken;
+    }
+
+    @Override
+    public void onException(JMSException exception) {
+      logger.warn("JMS context failed and will be discarded", exception);
+      invalidate();
+    }
+
+    long getLastUsed() {
+      return lastUsed;
+    }
+
+    long getLeasedAt() {
+      return leasedAt;
+    }
+
+    String getLeasedBy() {
+      return leasedBy;
+    }
+
+    Exception getLeaseTrace() {
+      return leaseTrace;
+    }
+
+    void lease(Exception trace) {
+      leasedAt = System.currentTimeMillis();
+      leasedBy = Thread.currentThread().getName();
+      leaseTrace = trace;
+      leakReported = false;
+    }
+
+    void touch() {
+      lastUsed = System.currentTimeMillis();
+      leaseTrace = null;
+    }
+
+    boolean reportLeak() {
+      if (leakReported) {
+        return false;
+      }
+      leakReported = true;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+
+import javax.jms.Destination;
+import javax.jms.JMSContext;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves and caches the {@link Destination}s used on a connection. Destinations are plain administered
+ * objects so a destination created by one context can be reused by every other context on the connection,
+ * which avoids parsing the destination URI and allocating a new destination for every message.
+ *
+ * Names matching a destination declared under {@code mq-server.<name>.destinations} are replaced by the
+ * declared URI, eg. {@code queue:///DEV.QUEUE.1?persistence=2&targetClient=1}. A declared URI starting with
+ * {@code topic:} is always resolved as a topic.
+ */
+public class JmsDestinationResolver {
+  private final Map<String, String> declaredDestinations;
+  private final Map<String, Destination> queues = new ConcurrentHashMap<>();
+  private final Map<String, Destination> topics = new ConcurrentHashMap<>();
+
+  public JmsDestinationResolver(Map<String, String> declaredDestinations) {
+    this.declaredDestinations = declaredDestinations;
+  }
+
+  public Destination resolve(String name, JmsDestinationType destinationType, JMSContext context) {
+    switch(typeOf(name, destinationType)) {
+      case TOPIC:
+        return topics.computeIfAbsent(name, key -> create(name, JmsDestinationType.TOPIC, context));
+      default:
+        return queues.computeIfAbsent(name, key -> create(name, JmsDestinationType.QUEUE, context));
+    }
+  }
+
+  /**
+   * Create a new destination that is not cached, for a consumer that changes the properties of its destination.
+   *
+   * @param name The destination name, URI or name of a declared destination
+   * @param destinationType The destination type
+   * @param context The context used to create the destination
+   * @return The destination
+   */
+  public Destination create(String name, JmsDestinationType destinationType, JMSContext context) {
+    String declared = declaredDestinations.get(name);
+    String uri = declared == null ? name : declared;
+    switch(typeOf(name, destinationType)) {
+      case TOPIC:
+        return context.createTopic(uri);
+      default:
+        return context.createQueue(uri);
+    }
+  }
+
+  private JmsDestinationType typeOf(String name, JmsDestinationType destinationType) {
+    String declared = declaredDestinations.get(name);
+    return declared != null && declared.startsWith("topic:") ? JmsDestinationType.TOPIC : destinationType;
+  }
+}
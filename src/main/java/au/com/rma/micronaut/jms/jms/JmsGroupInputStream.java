@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.JMSRuntimeException;
+import javax.jms.Message;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Reads the body of a group of messages sent by {@link JmsMessageGroups#send}, receiving each message of the group
+ * only when the previous one has been read so that at most one message body is held in memory.
+ *
+ * The stream receives from the context that delivered the first message, so it must only be read by the listener
+ * method it was passed to, before that method returns.
+ */
+public class JmsGroupInputStream extends InputStream {
+  private final JMSContext context;
+  private final Destination destination;
+  private final String groupId;
+  private final Duration timeout;
+  private JMSConsumer consumer;
+  private byte[] chunk;
+  private int position;
+  private int sequence;
+  private boolean last;
+
+  public JmsGroupInputStream(JMSContext context, Message first, Duration timeout) throws JMSException, IOException {
+    this.context = context;
+    this.destination = first.getJMSDestination();
+    this.groupId = first.propertyExists(JmsMessageGroups.GROUP_ID) ? first.getStringProperty(JmsMessageGroups.GROUP_ID) : null;
+    this.timeout = timeout;
+    load(first);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return chunk[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int count = Math.min(length, chunk.length - position);
+    System.arraycopy(chunk, position, buffer, offset, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return chunk == null ? 0 : chunk.length - position;
+  }
+
+  @Override
+  public void close() {
+    if (consumer != null) {
+      consumer.close();
+      consumer = null;
+    }
+  }
+
+  private boolean fill() throws IOException {
+    while (position == chunk.length) {
+      if (last) {
+        return false;
+      }
+      receiveNext();
+    }
+    return true;
+  }
+
+  private void receiveNext() throws IOException {
+    try {
+      if (consumer == null) {
+        consumer = context.createConsumer(destination, JmsMessageGroups.groupSelector(groupId));
+      }
+      Message message = consumer.receive(timeout.toMillis());
+      if (message == null) {
+        throw new IOException("Timeout receiving message " + (sequence + 1) + " of group " + groupId);
+      }
+      load(message);
+    } catch (JMSException | JMSRuntimeException exception) {
+      throw new IOException("Unable to receive the next message of group " + groupId, exception);
+    }
+  }
+
+  private void load(Message message) throws JMSException, IOException {
+    int expected = sequence + 1;
+    if (groupId != null && message.getIntProperty(JmsMessageGroups.GROUP_SEQ) != expected) {
+      throw new IOException("Expected message " + expected + " of group " + groupId
+          + " but received " + message.getIntProperty(JmsMessageGroups.GROUP_SEQ));
+    }
+    if (message instanceof BytesMessage) {
+      chunk = message.getBody(byte[].class);
+    } else {
+      String text = message.getBody(String.class);
+      chunk = text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+    if (chunk == null) {
+      chunk = new byte[0];
+    }
+    position = 0;
+    sequence = expected;
+    last = JmsMessageGroups.isLast(message);
+  }
+}
@@ -23,52 +23,316 @@
 package au.com.rma.micronaut.jms.jms;
 
 import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
-import au.com.rma.micronaut.jms.aop.JmsServerException;
+import au.com.rma.micronaut.jms.aop.JmsClientException;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.PoolConfiguration;
+import au.com.rma.micronaut.jms.jms.JmsContextPool.PooledContext;
+import au.com.rma.micronaut.jms.metrics.JmsMetrics;
 import io.micronaut.messaging.exceptions.MessagingException;
 import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.jms.*;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
 
 @Singleton
-public class JmsHelper {
+public class JmsHelper implements AutoCloseable {
   private static Logger logger = LoggerFactory.getLogger(JmsHelper.class);
 
   private List<NamedConnectionFactory> connectionFactories;
+  private List<ServerConfiguration> configurations;
   private ExecutorService executorService;
+  private TaskScheduler taskScheduler;
+  private JmsMetrics metrics;
+  private Map<String, JmsContextPool> pools = new ConcurrentHashMap<>();
+  private Map<String, JmsReplyCorrelator> replyCorrelators = new ConcurrentHashMap<>();
+  private Map<String, JmsBatchSender> batchSenders = new ConcurrentHashMap<>();
+  private Map<String, JmsDestinationResolver> destinationResolvers = new ConcurrentHashMap<>();
+  private List<JmsListenerContainer> listeners = new CopyOnWriteArrayList<>();
+  private Map<String, JmsConnectionProbe> probes = new ConcurrentHashMap<>();
+  private Map<String, JmsReplySender> replySenders = new ConcurrentHashMap<>();
+  private List<ScheduledFuture<?>> evictions = new CopyOnWriteArrayList<>();
 
-  public JmsHelper(List<NamedConnectionFactory> connectionFactories, @Named(TaskExecutors.IO) ExecutorService executorService) {
+  public JmsHelper(
+      List<NamedConnectionFactory> connectionFactories,
+      List<ServerConfiguration> configurations,
+      @Named(TaskExecutors.IO) ExecutorService executorService,
+      @Named(TaskExecutors.SCHEDULED) TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
     this.connectionFactories = connectionFactories;
+    this.configurations = configurations;
     this.executorService = executorService;
+    this.taskScheduler = taskScheduler;
+    this.metrics = metrics;
+    connectionFactories.stream()
+        .filter(NamedConnectionFactory::isShared)
+        .forEach(factory -> metrics.sessions(factory.getName(), factory::getSharedSessions));
   }
 
-  public ConnectionFactory getNamedFactory(String name) {
+  public NamedConnectionFactory getNamedFactory(String name) {
     return connectionFactories.stream()
         .filter(factory -> factory.getName().equals(name))
         .findFirst()
         .orElseThrow(() -> new MessagingException("Unable to find JMS connection factory named " + name));
   }
 
-  public void withClient(String name, ContextHandler handler) {
-    JMSContext context = getNamedFactory(name).createContext();
+  public ServerConfiguration getConfiguration(String name) {
+    return configurations.stream()
+        .filter(configuration -> configuration.getName().equals(name))
+        .findFirst()
+        .orElseGet(() -> new ServerConfiguration(name));
+  }
 
+  public void withClient(String name, ContextHandler handler) {
     try {
-      handler.usingContext(context);
+      execute(name, JMSContext.AUTO_ACKNOWLEDGE, handler);
     } catch (JMSException exception) {
       logger.error("Failed handle client", exception);
     }
   }
 
+  /**
+   * Run the handler using a context that stays leased until the future returned by the handler completes, so a
+   * send confirmed by a {@link CompletionListener} keeps its context until the confirmation arrives. The context
+   * is handed back on the IO executor, a {@link CompletionListener} must not close its own context.
+   *
+   * @param name The name of the connection
+   * @param handler The handler sending messages
+   * @return Completes with the result of the handler
+   */
+  public <T> CompletableFuture<T> withAsyncClient(String name, AsyncContextHandler<T> handler) {
+    JMSContext context;
+    PooledContext pooled;
+    if (getConfiguration(name).getPool().isEnabled()) {
+      pooled = getPool(name).borrow();
+      context = pooled.getContext();
+    } else {
+      pooled = null;
+      context = getNamedFactory(name).createContext(JMSContext.AUTO_ACKNOWLEDGE);
+    }
+
+    CompletableFuture<T> result;
+    try {
+      result = handler.usingContext(context);
+    } catch (JMSException | RuntimeException exception) {
+      result = new CompletableFuture<>();
+      result.completeExceptionally(exception instanceof JMSException
+          ? new JmsClientException("Failed to send message", exception)
+          : exception);
+    }
+    return result.whenCompleteAsync((ignored, throwable) -> {
+      if (pooled == null) {
+        context.close();
+        return;
+      }
+      if (throwable != null) {
+        // a failed or unconfirmed send may still be outstanding on the context
+        pooled.invalidate();
+      }
+      getPool(name).release(pooled);
+    }, executorService);
+  }
+
+  /**
+   * Run the handler using a transacted context, committing once the handler completes or rolling back
+   * if it fails.
+   *
+   * @param name The name of the connection
+   * @param handler The handler sending messages
+   */
+  public void withTransactedClient(String name, ContextHandler handler) {
+    try {
+      execute(name, JMSContext.SESSION_TRANSACTED, context -> {
+        try {
+          handler.usingContext(context);
+          context.commit();
+        } catch (JMSException | RuntimeException exception) {
+          rollback(context);
+          throw exception;
+        }
+      });
+    } catch (JMSException exception) {
+      throw new JmsClientException("Failed to send transacted messages", exception);
+    }
+  }
+
+  public JmsContextPool getPool(String name) {
+    return getPool(name, JMSContext.AUTO_ACKNOWLEDGE);
+  }
+
+  public JmsContextPool getPool(String name, int sessionMode) {
+    return pools.computeIfAbsent(name + "|" + sessionMode, key -> createPool(name, sessionMode));
+  }
+
+  /**
+   * Find the {@link JmsBatchSender} that groups messages sent on a connection into transactions of
+   * up to {@code maxMessages}.
+   *
+   * @param name The name of the connection
+   * @param maxMessages The maximum number of messages committed together
+   * @param maxDelay The longest a message waits for the batch to fill
+   * @param retries The number of times a failed batch is sent again
+   * @return The batch sender
+   */
+  public JmsBatchSender getBatchSender(String name, int maxMessages, Duration maxDelay, int retries) {
+    return batchSenders.computeIfAbsent(name + "|" + maxMessages + "|" + maxDelay.toMillis() + "|" + retries,
+        key -> new JmsBatchSender(this, name, maxMessages, maxDelay, retries, taskScheduler));
+  }
+
+  /**
+   * Find the {@link JmsReplyCorrelator} receiving replies on a destination, a blank destination uses a
+   * temporary queue owned by the correlator.
+   *
+   * @param name The name of the connection
+   * @param destination The reply destination
+   * @param destinationType The reply destination type
+   * @return The reply correlator
+   */
+  public JmsReplyCorrelator getReplyCorrelator(String name, String destination, JmsDestinationType destinationType) {
+    return replyCorrelators.computeIfAbsent(name + "|" + destinationType + "|" + destination, key -> {
+      JmsReplyCorrelator correlator = new JmsReplyCorrelator(
+          getNamedFactory(name), getDestinationResolver(name), destination, destinationType, taskScheduler, metrics);
+      correlator.start();
+      return correlator;
+    });
+  }
+
   public AutoCloseable withListener(String name, String queue, ContextMessageHandler consumer) {
-    JmsListenerWrapper wrapper = new JmsListenerWrapper(name, queue, consumer);
-    executorService.submit(wrapper);
+    JmsListenerOptions options = new JmsListenerOptions();
+    options.setDestination(queue);
+
+    return withListener(name, options, consumer);
+  }
+
+  public AutoCloseable withListener(String name, JmsListenerOptions options, ContextMessageHandler consumer) {
+    JmsListenerContainer container = new JmsListenerContainer(
+        getNamedFactory(name),
+        getDestinationResolver(name),
+        getReplySender(name),
+        options,
+        getConfiguration(name).getListener(),
+        consumer,
+        executorService,
+        taskScheduler,
+        metrics);
+    container.start();
+    listeners.add(container);
+
+    return container;
+  }
+
+  /**
+   * Listen to a destination passing each message to a handler that completes asynchronously. At most
+   * {@link JmsListenerOptions#getMaxInFlight()} messages are processed at once per consumer and messages are
+   * acknowledged once the processing of every message received with them has completed.
+   *
+   * @param name The name of the connection
+   * @param options The listener options
+   * @param handler The handler processing each message
+   * @return The listener which stops consuming when closed
+   */
+  public AutoCloseable withReactiveListener(String name, JmsListenerOptions options, ContextReactiveHandler handler) {
+    JmsListenerContainer container = new JmsListenerContainer(
+        getNamedFactory(name),
+        getDestinationResolver(name),
+        getReplySender(name),
+        options,
+        getConfiguration(name).getListener(),
+        handler,
+        executorService,
+        taskScheduler,
+        metrics);
+    container.start();
+    listeners.add(container);
+
+    return container;
+  }
+
+  /**
+   * Listen to a destination passing the messages to the handler in batches of up to
+   * {@link JmsListenerOptions#getBatchSize()}, each batch is committed once the handler returns.
+   *
+   * @param name The name of the connection
+   * @param options The listener options
+   * @param handler The handler processing each batch
+   * @return The listener which stops consuming when closed
+   */
+  public AutoCloseable withBatchListener(String name, JmsListenerOptions options, ContextBatchHandler handler) {
+    JmsListenerContainer container = new JmsListenerContainer(
+        getNamedFactory(name),
+        getDestinationResolver(name),
+        getReplySender(name),
+        options,
+        getConfiguration(name).getListener(),
+        handler,
+        executorService,
+        taskScheduler,
+        metrics);
+    container.start();
+    listeners.add(container);
+
+    return container;
+  }
+
+  /**
+   * @return The listeners started on any connection that have not been closed
+   */
+  public List<JmsListenerContainer> getListeners() {
+    listeners.removeIf(JmsListenerContainer::isClosed);
+    return listeners;
+  }
 
-    return wrapper;
+  /**
+   * Check a connection can reach the queue manager with a round trip on a context used only for probes, see
+   * {@link JmsConnectionProbe}.
+   *
+   * @param name The name of the connection
+   * @return The nanoseconds the check took
+   * @throws JMSException If the queue manager can not be reached
+   */
+  public long probe(String name) throws JMSException {
+    return probes.computeIfAbsent(name, key -> new JmsConnectionProbe(
+        getNamedFactory(name), getDestinationResolver(name), getConfiguration(name).getHealthDestination()))
+        .probe();
+  }
+
+  /**
+   * Resolve a destination on a connection, reusing the destination created by an earlier call.
+   *
+   * @param connectionName The name of the connection
+   * @param name The destination name, URI or name of a declared destination
+   * @param destinationType The destination type
+   * @param context The context used to create the destination the first time
+   * @return The destination
+   */
+  public Destination destinationFor(String connectionName, String name, JmsDestinationType destinationType, JMSContext context) {
+    return getDestinationResolver(connectionName).resolve(name, destinationType, context);
+  }
+
+  /**
+   * @param name The name of the connection
+   * @return The sender of the replies of the listeners on the connection
+   */
+  public JmsReplySender getReplySender(String name) {
+    return replySenders.computeIfAbsent(name, key -> new JmsReplySender());
+  }
+
+  public JmsDestinationResolver getDestinationResolver(String name) {
+    return destinationResolvers.computeIfAbsent(name,
+        key -> new JmsDestinationResolver(getConfiguration(name).getDestinations()));
   }
 
   public Destination destinationFor(String name, JmsDestinationType destinationType, JMSContext context) {
@@ -80,71 +344,85 @@ public class JmsHelper {
     }
   }
 
+  private void execute(String name, int sessionMode, ContextHandler handler) throws JMSException {
+    PoolConfiguration poolConfiguration = getConfiguration(name).getPool();
+    if (!poolConfiguration.isEnabled()) {
+      try (JMSContext context = getNamedFactory(name).createContext(sessionMode)) {
+        handler.usingContext(context);
+      }
+      return;
+    }
+
+    JmsContextPool pool = getPool(name, sessionMode);
+    PooledContext pooled = pool.borrow();
+    try {
+      handler.usingContext(pooled.getContext());
+    } catch (JMSException | JMSRuntimeException exception) {
+      pooled.invalidate();
+      throw exception;
+    } finally {
+      pool.release(pooled);
+    }
+  }
+
+  private void rollback(JMSContext context) {
+    try {
+      context.rollback();
+    } catch (JMSRuntimeException exception) {
+      logger.warn("Failed to rollback transacted context", exception);
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    evictions.forEach(eviction -> eviction.cancel(false));
+    batchSenders.values().forEach(JmsBatchSender::close);
+    replyCorrelators.values().forEach(JmsReplyCorrelator::close);
+    probes.values().forEach(JmsConnectionProbe::close);
+    replySenders.values().forEach(JmsReplySender::close);
+    pools.values().forEach(JmsContextPool::close);
+  }
+
+  private JmsContextPool createPool(String name, int sessionMode) {
+    PoolConfiguration configuration = getConfiguration(name).getPool();
+    JmsContextPool pool = new JmsContextPool(getNamedFactory(name), configuration, sessionMode);
+    metrics.pool(name, sessionMode == JMSContext.SESSION_TRANSACTED ? "transacted" : "auto",
+        pool::getActive, pool::getIdle, pool::getMaxSize);
+    evictions.add(taskScheduler.scheduleWithFixedDelay(
+        configuration.getEvictionInterval(), configuration.getEvictionInterval(), pool::evict));
+
+    return pool;
+  }
+
   @FunctionalInterface
   public interface ContextHandler {
     void usingContext(JMSContext context) throws JMSException;
   }
 
+  @FunctionalInterface
+  public interface AsyncContextHandler<T> {
+    /**
+     * @return Completes once the context is no longer needed
+     */
+    CompletableFuture<T> usingContext(JMSContext context) throws JMSException;
+  }
+
   @FunctionalInterface
   public interface ContextMessageHandler {
     void usingContext(JMSContext context, Message message) throws JMSException;
   }
 
-  private class JmsListenerWrapper implements Runnable, ExceptionListener, AutoCloseable {
-    private String name;
-    private String queue;
-    private ContextMessageHandler messageConsumer;
-
-    private Thread thread;
-    private JMSContext context;
-
-    private JmsListenerWrapper(String name, String queue, ContextMessageHandler messageConsumer) {
-      this.name = name;
-      this.queue = queue;
-      this.messageConsumer = messageConsumer;
-    }
-
-    @Override
-    public void run() {
-      thread = Thread.currentThread();
-      while (!thread.isInterrupted()) {
-        try {
-          context = getNamedFactory(name).createContext();
-          context.setExceptionListener(this);
-
-          Queue queue = context.createQueue(this.queue);
-          JMSConsumer consumer = context.createConsumer(queue);
-
-          consumer.setMessageListener(message -> {
-            try {
-              messageConsumer.usingContext(context, message);
-            } catch (JMSException exception) {
-              throw new JmsServerException("Unable to process message", exception);
-            }
-          });
-          return;
-        } catch (Exception e) {
-          logger.error("Encountered an error initialising the listener", e);
-          try {
-            Thread.sleep(5000);
-          } catch (InterruptedException interruptedException) {
-            Thread.currentThread().interrupt();
-          }
-        }
-      }
-    }
-
-    @Override
-    synchronized public void onException(JMSException exception) {
-      close();
-      executorService.submit(this);
-    }
-
-    @Override
-    public void close() {
-      context.close();
-      thread.interrupt();
-    }
+  @FunctionalInterface
+  public interface ContextBatchHandler {
+    void usingContext(JMSContext context, List<Message> messages) throws JMSException;
   }
 
+  @FunctionalInterface
+  public interface ContextReactiveHandler {
+    /**
+     * @return Completes once the message has been processed
+     */
+    CompletionStage<?> usingContext(JMSContext context, Message message) throws JMSException;
+  }
 }
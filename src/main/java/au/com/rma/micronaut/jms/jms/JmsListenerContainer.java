@@ -0,0 +1,860 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import au.com.rma.micronaut.jms.annotation.JmsDispatchMode;
+import au.com.rma.micronaut.jms.aop.JmsServerException;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ListenerConfiguration;
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextBatchHandler;
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextMessageHandler;
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextReactiveHandler;
+import au.com.rma.micronaut.jms.metrics.JmsMetrics;
+import com.ibm.msg.client.wmq.WMQConstants;
+import io.micronaut.scheduling.TaskScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes messages from a single destination using between {@link JmsListenerOptions#getMinConsumers()}
+ * and {@link JmsListenerOptions#getMaxConsumers()} independent contexts.
+ *
+ * When every consumer has received a message during the last scale interval the destination is assumed
+ * to have a backlog and another consumer is started, consumers above the minimum that stay idle for
+ * longer than the idle consumer timeout are stopped.
+ *
+ * Batch listeners pull messages using a transacted context and commit once per batch. Listeners using
+ * {@link JmsDispatchMode#PULL} receive on their own thread of the listener executor and acknowledge each message
+ * once it has been processed, so a slow listener only holds up its own consumer.
+ *
+ * Pull listeners with a prefetch keep receiving while a worker thread processes the messages already received,
+ * with at most prefetch messages waiting to be acknowledged, and ask the MQ client to read non-persistent messages
+ * ahead on a destination of their own.
+ *
+ * Topics are consumed with the subscription of the options, every consumer of a shared subscription receives a
+ * share of the publications rather than all of them.
+ *
+ * Ordered listeners use a single consumer that hands each message to a single threaded lane chosen by the key of
+ * the message, acknowledging once every message of the current window has been processed.
+ *
+ * Acknowledging or committing covers every message received by the session, so a failure redelivers the messages
+ * that were already processed with it. Each failure halves the next window and backs off before receiving again,
+ * and a message that keeps failing on its own is moved to the backout destination.
+ */
+public class JmsListenerContainer implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JmsListenerContainer.class);
+  private static final long RECEIVE_TIMEOUT = 1_000;
+  private static final String DELIVERY_COUNT = "JMSXDeliveryCount";
+
+  private final NamedConnectionFactory connectionFactory;
+  private final JmsDestinationResolver destinationResolver;
+  private final JmsReplySender replySender;
+  private final JmsListenerOptions options;
+  private final ListenerConfiguration configuration;
+  private final ContextMessageHandler messageHandler;
+  private final ContextBatchHandler batchHandler;
+  private final ContextReactiveHandler reactiveHandler;
+  private final ExecutorService executorService;
+  private final TaskScheduler taskScheduler;
+  private final JmsMetrics metrics;
+  private final ExecutorService consumerExecutor;
+  private final boolean ownsConsumerExecutor;
+  private final ExecutorService[] lanes;
+  private final List<ListenerConsumer> consumers = new CopyOnWriteArrayList<>();
+  private final AtomicInteger buffered = new AtomicInteger();
+  private final List<Runnable> gauges = new CopyOnWriteArrayList<>();
+  private final CountDownLatch attached;
+
+  private ScheduledFuture<?> scaler;
+  private volatile boolean closed;
+
+  public JmsListenerContainer(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      JmsReplySender replySender,
+      JmsListenerOptions options,
+      ListenerConfiguration configuration,
+      ContextMessageHandler messageHandler,
+      ExecutorService executorService,
+      TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
+    this(connectionFactory, destinationResolver, replySender, options, configuration, messageHandler, null, null, executorService, taskScheduler, metrics);
+  }
+
+  public JmsListenerContainer(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      JmsReplySender replySender,
+      JmsListenerOptions options,
+      ListenerConfiguration configuration,
+      ContextBatchHandler batchHandler,
+      ExecutorService executorService,
+      TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
+    this(connectionFactory, destinationResolver, replySender, options, configuration, null, batchHandler, null, executorService, taskScheduler, metrics);
+  }
+
+  public JmsListenerContainer(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      JmsReplySender replySender,
+      JmsListenerOptions options,
+      ListenerConfiguration configuration,
+      ContextReactiveHandler reactiveHandler,
+      ExecutorService executorService,
+      TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
+    this(connectionFactory, destinationResolver, replySender, options, configuration, null, null, reactiveHandler, executorService, taskScheduler, metrics);
+  }
+
+  private JmsListenerContainer(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      JmsReplySender replySender,
+      JmsListenerOptions options,
+      ListenerConfiguration configuration,
+      ContextMessageHandler messageHandler,
+      ContextBatchHandler batchHandler,
+      ContextReactiveHandler reactiveHandler,
+      ExecutorService executorService,
+      TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
+    this.connectionFactory = connectionFactory;
+    this.destinationResolver = destinationResolver;
+    this.replySender = replySender;
+    this.options = options;
+    this.configuration = configuration;
+    this.messageHandler = messageHandler;
+    this.batchHandler = batchHandler;
+    this.reactiveHandler = reactiveHandler;
+    this.executorService = executorService;
+    this.taskScheduler = taskScheduler;
+    this.metrics = metrics;
+    this.attached = new CountDownLatch(options.getMinConsumers());
+
+    ownsConsumerExecutor = options.getExecutor() == null && isPullDispatch();
+    if (options.getExecutor() != null && isPullDispatch()) {
+      consumerExecutor = options.getExecutor();
+    } else if (ownsConsumerExecutor) {
+      consumerExecutor = ListenerThreads.newExecutor(
+          "jms-listener-" + connectionFactory.getName(), options.getMaxConsumers());
+    } else {
+      consumerExecutor = executorService;
+    }
+
+    lanes = new ExecutorService[options.getLanes()];
+    for (int lane = 0; lane < lanes.length; lane++) {
+      lanes[lane] = ListenerThreads.newSingleThreadExecutor("jms-lane-" + connectionFactory.getName() + "-" + lane);
+    }
+  }
+
+  private boolean isPullDispatch() {
+    return messageHandler != null && options.getDispatchMode() == JmsDispatchMode.PULL;
+  }
+
+  private boolean isOrdered() {
+    return messageHandler != null && lanes.length > 0;
+  }
+
+  public void start() {
+    gauges.add(metrics.consumers(connectionFactory.getName(), options.getDestination(), consumers::size));
+    gauges.add(metrics.buffered(connectionFactory.getName(), options.getDestination(), buffered::get));
+    for (int i = 0; i < options.getMinConsumers(); i++) {
+      addConsumer();
+    }
+    if (options.getMaxConsumers() > options.getMinConsumers()) {
+      scaler = taskScheduler.scheduleWithFixedDelay(
+          configuration.getScaleInterval(), configuration.getScaleInterval(), this::scale);
+    }
+  }
+
+  public int getConsumerCount() {
+    return consumers.size();
+  }
+
+  public String getConnectionName() {
+    return connectionFactory.getName();
+  }
+
+  public JmsListenerOptions getOptions() {
+    return options;
+  }
+
+  /**
+   * @return The number of consumers with a context attached to the destination
+   */
+  public int getConnectedConsumerCount() {
+    return (int)consumers.stream().filter(consumer -> consumer.context != null).count();
+  }
+
+  /**
+   * @return The time in milliseconds the last message was received by any consumer, 0 if none has been received
+   */
+  public long getLastMessage() {
+    return consumers.stream().mapToLong(consumer -> consumer.lastMessage).max().orElse(0);
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Wait until each of the initial consumers has connected to the destination once.
+   *
+   * @param timeout How long to wait
+   * @return {@code true} if the consumers attached within the timeout
+   */
+  public boolean awaitAttached(Duration timeout) throws InterruptedException {
+    return attached.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (scaler != null) {
+      scaler.cancel(false);
+    }
+    consumers.forEach(ListenerConsumer::close);
+    consumers.clear();
+    if (ownsConsumerExecutor) {
+      consumerExecutor.shutdown();
+    }
+    for (ExecutorService lane : lanes) {
+      lane.shutdown();
+    }
+    gauges.forEach(Runnable::run);
+    gauges.clear();
+  }
+
+  private void addConsumer() {
+    ListenerConsumer consumer = new ListenerConsumer();
+    consumers.add(consumer);
+    consumerExecutor.submit(consumer);
+  }
+
+  void scale() {
+    if (closed) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long interval = configuration.getScaleInterval().toMillis();
+    long idleTimeout = configuration.getIdleConsumerTimeout().toMillis();
+
+    if (consumers.size() < options.getMaxConsumers()
+        && consumers.stream().allMatch(consumer -> now - consumer.lastMessage < interval)) {
+      logger.debug("Adding consumer to {} ({} running)", options, consumers.size());
+      addConsumer();
+    } else if (consumers.size() > options.getMinConsumers()) {
+      consumers.stream()
+          .filter(consumer -> now - consumer.lastActivity() > idleTimeout)
+          .findFirst()
+          .ifPresent(consumer -> {
+            logger.debug("Removing idle consumer from {} ({} running)", options, consumers.size());
+            consumers.remove(consumer);
+            consumer.close();
+          });
+    }
+  }
+
+  private static class InFlight {
+    private final Message message;
+    private volatile Throwable error;
+    private volatile boolean done;
+
+    private InFlight(Message message) {
+      this.message = message;
+    }
+  }
+
+  private class ListenerConsumer implements Runnable, ExceptionListener, MessageListener, AutoCloseable {
+    private final long created = System.currentTimeMillis();
+    private volatile long lastMessage;
+    private volatile JMSContext context;
+    private JMSContext[] laneContexts;
+    private ExecutorService bufferWorker;
+    private long dispatched;
+    private volatile boolean stopped;
+    private volatile boolean reconnecting;
+    private boolean attachedOnce;
+    private int failures;
+    private int windowLimit = Integer.MAX_VALUE;
+    private String failedAlone;
+
+    @Override
+    public void run() {
+      JmsReconnectCoordinator reconnects = connectionFactory.getReconnects();
+      while (!stopped) {
+        try {
+          if (reconnecting) {
+            reconnects.await();
+          }
+          JMSConsumer consumer;
+          if (attachedOnce) {
+            consumer = connect();
+          } else {
+            reconnects.beginStartup();
+            try {
+              consumer = connect();
+            } finally {
+              reconnects.endStartup();
+            }
+          }
+          if (!attachedOnce) {
+            attachedOnce = true;
+            attached.countDown();
+          }
+          if (reconnecting) {
+            reconnecting = false;
+            metrics.outage(connectionFactory.getName(), reconnects.connected());
+          }
+          if (batchHandler != null) {
+            receiveBatches(consumer);
+          } else if (reactiveHandler != null) {
+            receiveReactive(consumer);
+          } else if (isOrdered()) {
+            receiveWindows(consumer, lanes, options.getWindow());
+          } else if (isPullDispatch() && options.getPrefetch() > 0) {
+            receiveBuffered(consumer);
+          } else if (isPullDispatch()) {
+            receiveMessages(consumer);
+          } else {
+            return;
+          }
+        } catch (Exception e) {
+          if (stopped) {
+            return;
+          }
+          if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          logger.error("Encountered an error initialising the listener", e);
+          metrics.reconnect(connectionFactory.getName(), "listener");
+          closeContext();
+          reconnecting = true;
+          reconnects.failed();
+        }
+      }
+    }
+
+    private JMSConsumer connect() {
+      if (batchHandler != null) {
+        context = connectionFactory.createContext(JMSContext.SESSION_TRANSACTED);
+      } else if (reactiveHandler != null || isPullDispatch() || isOrdered()) {
+        context = connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE);
+      } else {
+        context = connectionFactory.createContext();
+      }
+
+      Destination destination;
+      if (options.getPrefetch() > 0) {
+        // read ahead is a property of the destination, so it must not be set on the destination shared by others
+        destination = destinationResolver.create(options.getDestination(), options.getDestinationType(), context);
+        enableReadAhead(destination);
+      } else {
+        destination = destinationResolver.resolve(options.getDestination(), options.getDestinationType(), context);
+      }
+      JMSConsumer consumer = createConsumer(destination);
+
+      if (messageHandler != null && !isPullDispatch() && !isOrdered()) {
+        context.setExceptionListener(this);
+        consumer.setMessageListener(this);
+      }
+      return consumer;
+    }
+
+    private JMSConsumer createConsumer(Destination destination) {
+      String selector = options.getSelector();
+      String subscription = options.getSubscriptionName();
+      if (subscription == null || !(destination instanceof Topic)) {
+        return selector == null ? context.createConsumer(destination) : context.createConsumer(destination, selector);
+      }
+
+      Topic topic = (Topic)destination;
+      if (options.isShared()) {
+        return options.isDurable()
+            ? context.createSharedDurableConsumer(topic, subscription, selector)
+            : context.createSharedConsumer(topic, subscription, selector);
+      }
+      return options.isDurable()
+          ? context.createDurableConsumer(topic, subscription, selector, false)
+          : context.createConsumer(topic, selector);
+    }
+
+    private void receiveBatches(JMSConsumer consumer) throws InterruptedException, JMSException {
+      while (!stopped) {
+        Message first = consumer.receive(RECEIVE_TIMEOUT);
+        if (first == null) {
+          continue;
+        }
+        int batchSize = windowSize(options.getBatchSize());
+        List<Message> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + options.getBatchDelay().toMillis();
+        while (batch.size() < batchSize) {
+          long remaining = deadline - System.currentTimeMillis();
+          Message next = remaining > 0 ? consumer.receive(remaining) : consumer.receiveNoWait();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        lastMessage = System.currentTimeMillis();
+
+        // a message that failed on its own is backed out before the handler runs again, as the work of the
+        // handler would otherwise be committed with the backout
+        if (batch.size() == 1 && first.getJMSMessageID() != null
+            && first.getJMSMessageID().equals(failedAlone) && backout(first)) {
+          context.commit();
+          succeeded();
+          continue;
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+          for (Message message : batch) {
+            recordRedelivery(message);
+          }
+          batchHandler.usingContext(context, batch);
+          context.commit();
+          success = true;
+        } catch (JMSException | RuntimeException exception) {
+          logger.error("Failed to process batch of {} messages from {}, rolling back", batch.size(), options, exception);
+        } finally {
+          metrics.listener(connectionFactory.getName(), options.getDestination(), System.nanoTime() - start, success);
+        }
+
+        if (success) {
+          succeeded();
+        } else {
+          failedAlone = batch.size() == 1 ? first.getJMSMessageID() : null;
+          rollback();
+          failed(batch.size());
+        }
+      }
+    }
+
+    private void rollback() {
+      try {
+        context.rollback();
+      } catch (JMSRuntimeException exception) {
+        // the session can no longer be trusted, reconnecting redelivers the batch on a new session
+        throw new JmsServerException("Unable to roll back a failed batch from " + options, exception);
+      }
+    }
+
+    /**
+     * Receive up to a window of messages, hand them to the workers and acknowledge the window once every message
+     * has been processed. Each worker uses its own context as a context is not thread safe.
+     *
+     * The workers only read the messages they are given, while this thread alone calls the consumer session. An
+     * acknowledgement covers every message the session has received, including messages still waiting on a
+     * worker, so the window is only acknowledged once all of them completed. A failure redelivers the whole window,
+     * including messages that were already processed.
+     */
+    private void receiveWindows(JMSConsumer consumer, ExecutorService[] workers, int windowSize)
+        throws InterruptedException, JMSException {
+      openLaneContexts(workers.length);
+      while (!stopped) {
+        Message message = consumer.receive(RECEIVE_TIMEOUT);
+        if (message == null) {
+          continue;
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        int size = windowSize(windowSize);
+        List<CompletableFuture<Void>> window = new ArrayList<>(size);
+        Message first = message;
+        Message last;
+        do {
+          window.add(dispatch(message, workers, failed));
+          last = message;
+        } while (window.size() < size && (message = consumer.receiveNoWait()) != null);
+
+        acknowledge(window, first, last);
+      }
+    }
+
+    /**
+     * Keep receiving while the worker processes the messages already received, holding at most prefetch messages
+     * that have not been acknowledged. Acknowledging a message acknowledges every message the session has
+     * received, so the received messages are acknowledged together once the worker has caught up with the
+     * consumer or the prefetch is full. While no message is waiting the consumer sleeps until the worker completes
+     * a message, rather than polling.
+     */
+    private void receiveBuffered(JMSConsumer consumer) throws InterruptedException, JMSException {
+      ExecutorService[] workers = { bufferWorker() };
+      openLaneContexts(1);
+      Semaphore completions = new Semaphore(0);
+      while (!stopped) {
+        AtomicBoolean failed = new AtomicBoolean();
+        int prefetch = windowSize(options.getPrefetch());
+        List<CompletableFuture<Void>> received = new ArrayList<>(prefetch);
+        Message first = null;
+        Message last = null;
+        completions.drainPermits();
+        while (!stopped && !failed.get() && received.size() < prefetch) {
+          if (!received.isEmpty() && received.stream().allMatch(CompletableFuture::isDone)) {
+            break;
+          }
+          Message message = received.isEmpty() ? consumer.receive(RECEIVE_TIMEOUT) : consumer.receiveNoWait();
+          if (message != null) {
+            CompletableFuture<Void> processed = dispatch(message, workers, failed);
+            processed.whenComplete((ignored, throwable) -> completions.release());
+            received.add(processed);
+            first = first == null ? message : first;
+            last = message;
+          } else if (!received.isEmpty()) {
+            completions.tryAcquire(RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS);
+          }
+        }
+        if (last != null) {
+          acknowledge(received, first, last);
+        }
+      }
+    }
+
+    private void openLaneContexts(int count) {
+      laneContexts = new JMSContext[count];
+      for (int lane = 0; lane < count; lane++) {
+        laneContexts[lane] = context.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+      }
+    }
+
+    private void acknowledge(List<CompletableFuture<Void>> window, Message first, Message last)
+        throws InterruptedException, JMSException {
+      try {
+        CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+        last.acknowledge();
+        succeeded();
+      } catch (CompletionException exception) {
+        logger.error("Failed to process a window of {} messages from {}, recovering the session",
+            window.size(), options, exception.getCause());
+        recover(window.size(), first, last);
+      }
+    }
+
+    /**
+     * Recover the session after a failure, which redelivers every message received since the last acknowledgement
+     * including those that were processed. A message that failed on its own too many times is backed out and
+     * acknowledged instead.
+     */
+    private void recover(int windowSize, Message first, Message last) throws InterruptedException, JMSException {
+      if (windowSize == 1 && backout(first)) {
+        last.acknowledge();
+        succeeded();
+      } else {
+        context.recover();
+        failed(windowSize);
+      }
+    }
+
+    /**
+     * The number of messages to receive before the next acknowledgement or commit. Every consecutive failure halves
+     * it, so the messages redelivered after a failure are processed in smaller windows until the failing message
+     * is processed on its own, and every success doubles it again up to the configured size.
+     */
+    private int windowSize(int configured) {
+      return Math.max(1, Math.min(configured, windowLimit));
+    }
+
+    private void succeeded() {
+      failures = 0;
+      failedAlone = null;
+      windowLimit = windowLimit > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : windowLimit * 2;
+    }
+
+    /**
+     * Halve the next window and wait before receiving the redelivered messages, doubling the wait for every
+     * consecutive failure.
+     */
+    private void failed(int windowSize) throws InterruptedException {
+      failures++;
+      windowLimit = Math.max(1, windowSize / 2);
+      Duration delay = configuration.getRedeliveryDelay().multipliedBy(1L << Math.min(failures - 1, 20));
+      if (delay.compareTo(configuration.getMaxRedeliveryDelay()) > 0) {
+        delay = configuration.getMaxRedeliveryDelay();
+      }
+      long deadline = System.nanoTime() + delay.toNanos();
+      while (!stopped && System.nanoTime() < deadline) {
+        TimeUnit.NANOSECONDS.sleep(Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(RECEIVE_TIMEOUT)));
+      }
+    }
+
+    /**
+     * Move a message that failed on its own to the backout destination once it has been redelivered the maximum
+     * number of times, so it no longer holds up the messages behind it. The move is part of the transaction of a
+     * transacted session, otherwise the message is sent before it is acknowledged. Without a backout destination the
+     * message is redelivered and left to the backout threshold and queue of the queue manager.
+     *
+     * @return {@code true} if the message was backed out and should be acknowledged
+     */
+    private boolean backout(Message message) throws JMSException {
+      int maxRedeliveries = configuration.getMaxRedeliveries();
+      if (maxRedeliveries <= 0
+          || !message.propertyExists(DELIVERY_COUNT)
+          || message.getIntProperty(DELIVERY_COUNT) <= maxRedeliveries) {
+        return false;
+      }
+      String backoutDestination = configuration.getBackoutDestination();
+      if (backoutDestination == null) {
+        logger.warn("Message {} from {} failed after {} redeliveries without a backout destination, leaving it "
+            + "to the queue manager backout threshold", message.getJMSMessageID(), options, maxRedeliveries);
+        return false;
+      }
+      context.createProducer().send(
+          destinationResolver.resolve(backoutDestination, JmsDestinationType.QUEUE, context), message);
+      logger.error("Moved message {} from {} to {} after {} redeliveries",
+          message.getJMSMessageID(), options, backoutDestination, maxRedeliveries);
+      return true;
+    }
+
+    private CompletableFuture<Void> dispatch(Message message, ExecutorService[] workers, AtomicBoolean failed) {
+      Object key;
+      try {
+        key = options.getKeyExtractor() == null ? null : options.getKeyExtractor().key(message);
+      } catch (JMSException | RuntimeException exception) {
+        failed.set(true);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        result.completeExceptionally(exception);
+        return result;
+      }
+      int lane = key == null
+          ? (int)(dispatched++ % workers.length)
+          : (key.hashCode() & Integer.MAX_VALUE) % workers.length;
+      JMSContext laneContext = laneContexts[lane];
+
+      buffered.incrementAndGet();
+      return CompletableFuture.runAsync(() -> {
+        try {
+          if (failed.get()) {
+            throw new CancellationException("Skipped after an earlier message of the window failed");
+          }
+          handle(laneContext, message);
+        } catch (RuntimeException exception) {
+          failed.set(true);
+          throw exception;
+        } finally {
+          buffered.decrementAndGet();
+        }
+      }, workers[lane]);
+    }
+
+    private ExecutorService bufferWorker() {
+      if (bufferWorker == null) {
+        bufferWorker = ListenerThreads.newSingleThreadExecutor("jms-buffer-" + connectionFactory.getName());
+      }
+      return bufferWorker;
+    }
+
+    /**
+     * Let the MQ client read non-persistent messages ahead of the consumer, other providers are left unchanged.
+     */
+    private void enableReadAhead(Destination destination) {
+      if (destination instanceof com.ibm.msg.client.jms.JmsDestination) {
+        try {
+          ((com.ibm.msg.client.jms.JmsDestination)destination)
+              .setIntProperty(WMQConstants.WMQ_READ_AHEAD_ALLOWED, WMQConstants.WMQ_READ_AHEAD_ALLOWED_ENABLED);
+        } catch (JMSException exception) {
+          logger.warn("Unable to enable read ahead for {}", options, exception);
+        }
+      }
+    }
+
+    /**
+     * Acknowledging a message acknowledges every message the session has received, so messages are received in
+     * windows of up to the maximum in flight and each window is acknowledged once all of its messages completed.
+     * A failure recovers the session and redelivers the whole window, see {@link #recover(int, Message, Message)}.
+     * While no message is waiting, or the window is full, the consumer sleeps until a message completes.
+     */
+    private void receiveReactive(JMSConsumer consumer) throws InterruptedException, JMSException {
+      List<InFlight> window = new ArrayList<>(options.getMaxInFlight());
+      BlockingQueue<InFlight> completions = new LinkedBlockingQueue<>();
+
+      while (!stopped) {
+        if (!window.isEmpty() && window.stream().allMatch(entry -> entry.done)) {
+          InFlight failure = window.stream().filter(entry -> entry.error != null).findFirst().orElse(null);
+          Message last = window.get(window.size() - 1).message;
+          if (failure == null) {
+            last.acknowledge();
+            succeeded();
+          } else {
+            logger.error("Failed to process message from {}, recovering the session", options, failure.error);
+            recover(window.size(), window.get(0).message, last);
+          }
+          window.clear();
+          completions.clear();
+          continue;
+        }
+
+        boolean failed = window.stream().anyMatch(entry -> entry.error != null);
+        Message message = null;
+        if (!failed && window.size() < windowSize(options.getMaxInFlight())) {
+          message = window.isEmpty() ? consumer.receive(RECEIVE_TIMEOUT) : consumer.receiveNoWait();
+        }
+        if (message != null) {
+          window.add(process(message, completions));
+        } else if (!window.isEmpty()) {
+          completions.poll(RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+
+    private InFlight process(Message message, BlockingQueue<InFlight> completions) {
+      InFlight entry = new InFlight(message);
+      lastMessage = System.currentTimeMillis();
+      long start = System.nanoTime();
+
+      CompletionStage<?> result;
+      try {
+        recordRedelivery(message);
+        result = reactiveHandler.usingContext(context, message);
+      } catch (JMSException | RuntimeException exception) {
+        CompletableFuture<Object> failure = new CompletableFuture<>();
+        failure.completeExceptionally(exception);
+        result = failure;
+      }
+      result.whenComplete((value, throwable) -> {
+        metrics.listener(connectionFactory.getName(), options.getDestination(), System.nanoTime() - start, throwable == null);
+        entry.error = throwable;
+        entry.done = true;
+        completions.offer(entry);
+      });
+      return entry;
+    }
+
+    private void receiveMessages(JMSConsumer consumer) throws InterruptedException, JMSException {
+      while (!stopped) {
+        Message message = consumer.receive(RECEIVE_TIMEOUT);
+        if (message == null) {
+          continue;
+        }
+        try {
+          onMessage(message);
+          message.acknowledge();
+          succeeded();
+        } catch (JMSException | RuntimeException exception) {
+          logger.error("Failed to process message from {}, recovering the session", options, exception);
+          recover(1, message, message);
+        }
+      }
+    }
+
+    @Override
+    public void onMessage(Message message) {
+      handle(context, message);
+    }
+
+    private void handle(JMSContext handlerContext, Message message) {
+      lastMessage = System.currentTimeMillis();
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        recordRedelivery(message);
+        messageHandler.usingContext(handlerContext, message);
+        success = true;
+      } catch (JMSException exception) {
+        throw new JmsServerException("Unable to process message", exception);
+      } finally {
+        metrics.listener(connectionFactory.getName(), options.getDestination(), System.nanoTime() - start, success);
+      }
+    }
+
+    private void recordRedelivery(Message message) throws JMSException {
+      if (message.getJMSRedelivered()) {
+        metrics.redelivery(connectionFactory.getName(), options.getDestination());
+      }
+    }
+
+    @Override
+    synchronized public void onException(JMSException exception) {
+      logger.warn("Listener on {} lost its connection, reconnecting", options, exception);
+      metrics.reconnect(connectionFactory.getName(), "listener");
+      closeContext();
+      reconnecting = true;
+      connectionFactory.getReconnects().failed();
+      if (!stopped) {
+        consumerExecutor.submit(this);
+      }
+    }
+
+    @Override
+    public void close() {
+      stopped = true;
+      closeContext();
+      if (bufferWorker != null) {
+        bufferWorker.shutdown();
+      }
+    }
+
+    long lastActivity() {
+      return Math.max(created, lastMessage);
+    }
+
+    private void closeContext() {
+      JMSContext[] currentLanes = laneContexts;
+      laneContexts = null;
+      if (currentLanes != null) {
+        for (JMSContext laneContext : currentLanes) {
+          try {
+            if (laneContext != null) {
+              replySender.release(laneContext);
+              laneContext.close();
+            }
+          } catch (JMSRuntimeException exception) {
+            logger.debug("Error closing lane context", exception);
+          }
+        }
+      }
+      JMSContext current = context;
+      context = null;
+      if (current != null) {
+        replySender.release(current);
+        try {
+          current.close();
+        } catch (JMSRuntimeException exception) {
+          logger.debug("Error closing listener context", exception);
+        }
+      }
+    }
+  }
+}
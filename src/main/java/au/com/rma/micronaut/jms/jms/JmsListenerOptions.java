@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import au.com.rma.micronaut.jms.annotation.JmsDispatchMode;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The settings used by a {@link JmsListenerContainer} to consume from a destination.
+ */
+public class JmsListenerOptions {
+  private String destination;
+  private JmsDestinationType destinationType = JmsDestinationType.QUEUE;
+  private String subscriptionName;
+  private boolean durable;
+  private boolean shared;
+  private String selector;
+  private int minConsumers = 1;
+  private int maxConsumers = 1;
+  private int batchSize = 1;
+  private Duration batchDelay = Duration.ZERO;
+  private JmsDispatchMode dispatchMode = JmsDispatchMode.PROVIDER;
+  private ExecutorService executor;
+  private int lanes;
+  private int window = 100;
+  private int maxInFlight = 16;
+  private int prefetch;
+  private MessageKeyExtractor keyExtractor;
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public void setDestination(String destination) {
+    this.destination = destination;
+  }
+
+  public JmsDestinationType getDestinationType() {
+    return destinationType;
+  }
+
+  public void setDestinationType(JmsDestinationType destinationType) {
+    this.destinationType = destinationType;
+  }
+
+  /**
+   * Consume a topic using a named subscription.
+   *
+   * @param name The name of the subscription
+   * @param durable {@code true} to keep publications while there are no consumers
+   * @param shared {@code true} to share the publications between the consumers of the subscription
+   */
+  public void setSubscription(String name, boolean durable, boolean shared) {
+    if (destinationType != JmsDestinationType.TOPIC) {
+      throw new IllegalArgumentException("A subscription can only be used with a topic destination");
+    }
+    this.subscriptionName = name;
+    this.durable = durable;
+    this.shared = shared;
+  }
+
+  /**
+   * @return The name of the subscription, or {@code null} when the destination is consumed without a subscription
+   */
+  public String getSubscriptionName() {
+    return subscriptionName;
+  }
+
+  public boolean isDurable() {
+    return durable;
+  }
+
+  public boolean isShared() {
+    return shared;
+  }
+
+  public String getSelector() {
+    return selector;
+  }
+
+  public void setSelector(String selector) {
+    this.selector = selector == null || selector.isEmpty() ? null : selector;
+  }
+
+  public int getMinConsumers() {
+    return minConsumers;
+  }
+
+  public int getMaxConsumers() {
+    return maxConsumers;
+  }
+
+  /**
+   * Set the number of consumers from either a fixed value eg. {@code "4"} or a range eg. {@code "2-8"}.
+   *
+   * @param concurrency The concurrency of the listener
+   */
+  public void setConcurrency(String concurrency) {
+    try {
+      int separator = concurrency.indexOf('-');
+      if (separator < 0) {
+        minConsumers = Integer.parseInt(concurrency.trim());
+        maxConsumers = minConsumers;
+      } else {
+        minConsumers = Integer.parseInt(concurrency.substring(0, separator).trim());
+        maxConsumers = Integer.parseInt(concurrency.substring(separator + 1).trim());
+      }
+    } catch (NumberFormatException exception) {
+      throw new IllegalArgumentException("Invalid concurrency '" + concurrency + "' expected eg. \"4\" or \"2-8\"", exception);
+    }
+    if (minConsumers < 1 || maxConsumers < minConsumers) {
+      throw new IllegalArgumentException("Invalid concurrency '" + concurrency + "' expected 1 <= min <= max");
+    }
+  }
+
+  /**
+   * @return The maximum number of messages passed to a batch listener and committed together
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size " + batchSize + " expected at least 1");
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return The longest a batch listener waits for a batch to fill after receiving its first message
+   */
+  public Duration getBatchDelay() {
+    return batchDelay;
+  }
+
+  public void setBatchDelay(Duration batchDelay) {
+    this.batchDelay = batchDelay;
+  }
+
+  public JmsDispatchMode getDispatchMode() {
+    return dispatchMode;
+  }
+
+  public void setDispatchMode(JmsDispatchMode dispatchMode) {
+    this.dispatchMode = dispatchMode;
+  }
+
+  /**
+   * @return The executor running pull consumers, or {@code null} to create one for the listener
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return The number of ordered lanes, or 0 when the listener is not ordered
+   */
+  public int getLanes() {
+    return lanes;
+  }
+
+  /**
+   * Process messages on ordered lanes chosen by the key of each message.
+   *
+   * @param lanes The number of lanes
+   * @param keyExtractor Derives the key of each message
+   * @param window The maximum number of messages received before they are acknowledged together
+   */
+  public void setOrdered(int lanes, MessageKeyExtractor keyExtractor, int window) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("Invalid number of lanes " + lanes + " expected at least 1");
+    }
+    if (window < 1) {
+      throw new IllegalArgumentException("Invalid window " + window + " expected at least 1");
+    }
+    if (maxConsumers != 1) {
+      throw new IllegalArgumentException("An ordered listener must use a single consumer");
+    }
+    this.lanes = lanes;
+    this.keyExtractor = keyExtractor;
+    this.window = window;
+  }
+
+  /**
+   * @return The maximum number of messages an ordered listener receives before they are acknowledged together
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  public MessageKeyExtractor getKeyExtractor() {
+    return keyExtractor;
+  }
+
+  /**
+   * @return The maximum number of messages a reactive listener processes at once per consumer
+   */
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public void setMaxInFlight(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Invalid max in flight " + maxInFlight + " expected at least 1");
+    }
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * @return The number of messages received ahead of the listener, or 0 to receive one message at a time
+   */
+  public int getPrefetch() {
+    return prefetch;
+  }
+
+  public void setPrefetch(int prefetch) {
+    if (prefetch < 0) {
+      throw new IllegalArgumentException("Invalid prefetch " + prefetch + " expected at least 0");
+    }
+    this.prefetch = prefetch;
+  }
+
+  @Override
+  public String toString() {
+    return "JmsListenerOptions[" + destination + "]";
+  }
+}
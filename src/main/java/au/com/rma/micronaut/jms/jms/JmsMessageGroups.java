@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Splits large bodies into a group of {@link BytesMessage}s linked by {@code JMSXGroupID} and numbered by
+ * {@code JMSXGroupSeq}, the last message of the group is marked with {@code JMS_IBM_Last_Msg_In_Group}.
+ */
+public class JmsMessageGroups {
+  public static final String GROUP_ID = "JMSXGroupID";
+  public static final String GROUP_SEQ = "JMSXGroupSeq";
+  public static final String LAST_IN_GROUP = "JMS_IBM_Last_Msg_In_Group";
+
+  /**
+   * Selects the first message of each group, and messages that are not part of a group. A message without a
+   * {@code JMSXGroupSeq} does not match {@code JMSXGroupSeq = 1} under JMS selector rules, so it is selected with
+   * {@code IS NULL}. On IBM MQ every message has one, as the {@code MsgSeqNumber} of a message outside a group is 1.
+   */
+  public static final String FIRST_IN_GROUP_SELECTOR = "(" + GROUP_SEQ + " = 1 OR " + GROUP_SEQ + " IS NULL)";
+
+  private static final Random random = new SecureRandom();
+
+  private JmsMessageGroups() {
+  }
+
+  @FunctionalInterface
+  public interface MessageSender {
+    void send(BytesMessage message) throws JMSException;
+  }
+
+  /**
+   * Send the contents of a stream as a group of messages, holding at most two chunks in memory.
+   *
+   * @param context The context used to create the messages, it should be transacted so the group is delivered whole
+   * @param stream The body of the group
+   * @param chunkSize The maximum body size of each message
+   * @param sender Completes and sends each message of the group
+   * @return The number of messages sent
+   */
+  public static int send(JMSContext context, InputStream stream, int chunkSize, MessageSender sender)
+      throws JMSException, IOException {
+    String groupId = newGroupId();
+    byte[] chunk = readChunk(stream, chunkSize);
+    int sequence = 0;
+    while (true) {
+      byte[] next = chunk.length < chunkSize ? new byte[0] : readChunk(stream, chunkSize);
+      boolean last = next.length == 0;
+
+      BytesMessage message = context.createBytesMessage();
+      message.writeBytes(chunk);
+      message.setStringProperty(GROUP_ID, groupId);
+      message.setIntProperty(GROUP_SEQ, ++sequence);
+      message.setBooleanProperty(LAST_IN_GROUP, last);
+      sender.send(message);
+
+      if (last) {
+        return sequence;
+      }
+      chunk = next;
+    }
+  }
+
+  /**
+   * @return The selector receiving the remaining messages of the group
+   */
+  public static String groupSelector(String groupId) {
+    return GROUP_ID + " = '" + groupId.replace("'", "''") + "'";
+  }
+
+  /**
+   * @return {@code true} if the message is the last of its group, or is not part of a group
+   */
+  public static boolean isLast(Message message) throws JMSException {
+    if (!message.propertyExists(GROUP_ID) || message.getStringProperty(GROUP_ID) == null) {
+      return true;
+    }
+    return message.propertyExists(LAST_IN_GROUP) && message.getBooleanProperty(LAST_IN_GROUP);
+  }
+
+  /**
+   * A group id in the {@code ID:} hex form so IBM MQ maps it directly to the 24 byte {@code GroupId}.
+   */
+  private static String newGroupId() {
+    byte[] id = new byte[24];
+    random.nextBytes(id);
+    StringBuilder builder = new StringBuilder("ID:");
+    for (byte value : id) {
+      builder.append(String.format("%02x", value));
+    }
+    return builder.toString();
+  }
+
+  private static byte[] readChunk(InputStream stream, int chunkSize) throws IOException {
+    byte[] buffer = new byte[chunkSize];
+    int length = 0;
+    int read;
+    while (length < chunkSize && (read = stream.read(buffer, length, chunkSize - length)) >= 0) {
+      length += read;
+    }
+    if (length == chunkSize) {
+      return buffer;
+    }
+    byte[] chunk = new byte[length];
+    System.arraycopy(buffer, 0, chunk, 0, length);
+    return chunk;
+  }
+}
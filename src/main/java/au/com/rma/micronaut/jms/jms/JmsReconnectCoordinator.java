@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ReconnectConfiguration;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Coordinates the reconnection of every listener and reply consumer using a connection, so an outage is retried
+ * with one exponential backoff per connection rather than each consumer retrying on its own schedule.
+ *
+ * Consumers report a failure with {@link #failed()} and wait with {@link #await()}. Failures reported while a
+ * retry is already scheduled do not extend the backoff, and as soon as any consumer reconnects every waiting
+ * consumer is released to reconnect straight away.
+ *
+ * The number of consumers making their first connection at the same time is bounded, so starting many listeners
+ * at once does not flood the queue manager with connection requests. Reconnections and consumers added by scaling
+ * are paced by the backoff instead.
+ */
+public class JmsReconnectCoordinator {
+  private final ReconnectConfiguration configuration;
+  private final Semaphore startups;
+  private final Object lock = new Object();
+  private int attempts;
+  private long nextAttempt;
+  private long outageStarted;
+  private long reconnections;
+
+  public JmsReconnectCoordinator(ReconnectConfiguration configuration) {
+    this(configuration, 8);
+  }
+
+  /**
+   * @param configuration The backoff configuration
+   * @param maxStartups The maximum number of consumers making their first connection at the same time
+   */
+  public JmsReconnectCoordinator(ReconnectConfiguration configuration, int maxStartups) {
+    this.configuration = configuration;
+    this.startups = new Semaphore(maxStartups);
+  }
+
+  /**
+   * Wait for a permit to make a consumer's first connection, which must be returned with {@link #endStartup()}.
+   */
+  public void beginStartup() throws InterruptedException {
+    startups.acquire();
+  }
+
+  public void endStartup() {
+    startups.release();
+  }
+
+  /**
+   * Record a failure to connect, scheduling the next attempt unless one is already scheduled.
+   */
+  public void failed() {
+    synchronized (lock) {
+      if (outageStarted == 0) {
+        outageStarted = System.nanoTime();
+      }
+      long now = System.currentTimeMillis();
+      if (now >= nextAttempt) {
+        nextAttempt = now + backoff(attempts++).toMillis();
+      }
+    }
+  }
+
+  /**
+   * Wait until the next attempt is due or another consumer has reconnected.
+   */
+  public void await() throws InterruptedException {
+    synchronized (lock) {
+      long reconnected = reconnections;
+      long remaining;
+      while (reconnections == reconnected && (remaining = nextAttempt - System.currentTimeMillis()) > 0) {
+        lock.wait(remaining);
+      }
+    }
+  }
+
+  /**
+   * @return How long until the next attempt is due, {@link Duration#ZERO} if it can be made now
+   */
+  public Duration getDelay() {
+    synchronized (lock) {
+      return Duration.ofMillis(Math.max(0, nextAttempt - System.currentTimeMillis()));
+    }
+  }
+
+  /**
+   * Record a successful connection, resetting the backoff and releasing the waiting consumers.
+   *
+   * @return The nanoseconds since the outage started, or 0 if there was no outage
+   */
+  public long connected() {
+    synchronized (lock) {
+      if (outageStarted == 0) {
+        return 0;
+      }
+      long outage = System.nanoTime() - outageStarted;
+      outageStarted = 0;
+      attempts = 0;
+      nextAttempt = 0;
+      reconnections++;
+      lock.notifyAll();
+      return outage;
+    }
+  }
+
+  Duration backoff(int attempt) {
+    double delay = Math.min(
+        configuration.getMaxDelay().toMillis(),
+        configuration.getInitialDelay().toMillis() * Math.pow(configuration.getMultiplier(), attempt));
+    double jitter = configuration.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Duration.ofMillis(Math.max(0, Math.round(delay * (1 + jitter))));
+  }
+}
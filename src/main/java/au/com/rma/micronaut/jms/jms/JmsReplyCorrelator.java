@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType;
+import au.com.rma.micronaut.jms.aop.JmsClientException;
+import au.com.rma.micronaut.jms.metrics.JmsMetrics;
+import io.micronaut.scheduling.TaskScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.*;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives the replies for request/reply calls made from a {@link au.com.rma.micronaut.jms.annotation.JmsClient}.
+ *
+ * A single long lived consumer receives the replies and dispatches each one to the caller waiting on its
+ * {@code JMSCorrelationID}, which avoids creating a consumer with a correlation id selector for every request. When no
+ * reply destination is named the consumer is attached to a temporary queue. A named reply destination may be shared
+ * with other application instances, so the correlation ids from {@link #newCorrelationId()} start with a prefix unique
+ * to the correlator and its consumer only selects replies with that prefix. A correlation id set by the caller has no
+ * prefix, so its reply is received by a consumer selecting that id alone.
+ */
+public class JmsReplyCorrelator implements MessageListener, ExceptionListener, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JmsReplyCorrelator.class);
+  private final NamedConnectionFactory connectionFactory;
+  private final JmsDestinationResolver destinationResolver;
+  private final String destination;
+  private final JmsDestinationType destinationType;
+  private final TaskScheduler taskScheduler;
+  private final JmsMetrics metrics;
+  private final Map<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+  private final String correlationPrefix = UUID.randomUUID().toString().replace("-", "") + "-";
+  private final AtomicLong sequence = new AtomicLong();
+
+  private volatile JMSContext context;
+  private volatile Destination replyDestination;
+  private volatile boolean closed;
+
+  public JmsReplyCorrelator(
+      NamedConnectionFactory connectionFactory,
+      JmsDestinationResolver destinationResolver,
+      String destination,
+      JmsDestinationType destinationType,
+      TaskScheduler taskScheduler,
+      JmsMetrics metrics) {
+    this.connectionFactory = connectionFactory;
+    this.destinationResolver = destinationResolver;
+    this.destination = destination == null || destination.isEmpty() ? null : destination;
+    this.destinationType = destinationType;
+    this.taskScheduler = taskScheduler;
+    this.metrics = metrics;
+    metrics.inFlight(connectionFactory.getName(), describeDestination(), pending::size);
+  }
+
+  public synchronized void start() {
+    JMSContext created = connectionFactory.createContext();
+    try {
+      created.setExceptionListener(this);
+      Destination target;
+      if (destination == null) {
+        target = created.createTemporaryQueue();
+        created.createConsumer(target).setMessageListener(this);
+      } else {
+        target = destinationResolver.resolve(destination, destinationType, created);
+        created.createConsumer(target, "JMSCorrelationID LIKE '" + correlationPrefix + "%'").setMessageListener(this);
+      }
+      context = created;
+      replyDestination = target;
+    } catch (JMSRuntimeException exception) {
+      created.close();
+      throw exception;
+    }
+  }
+
+  /**
+   * @return The destination replies should be sent to
+   */
+  public Destination getReplyDestination() {
+    Destination current = replyDestination;
+    if (current == null) {
+      throw new JmsClientException("Reply destination " + describe() + " is not connected");
+    }
+    return current;
+  }
+
+  /**
+   * @return A correlation id for a request, selected by the reply consumer of this correlator
+   */
+  public String newCorrelationId() {
+    return correlationPrefix + sequence.incrementAndGet();
+  }
+
+  /**
+   * Register interest in the reply with the given correlation id. This must be called before the request
+   * is sent so that a fast reply is not missed.
+   *
+   * @param correlationId The JMSCorrelationID of the request
+   * @param timeout How long to wait for the reply
+   * @return A future completed with the reply, or exceptionally with a {@link JmsClientException} on timeout
+   */
+  public CompletableFuture<Message> register(String correlationId, Duration timeout) {
+    CompletableFuture<Message> reply = new CompletableFuture<>();
+    pending.put(correlationId, reply);
+    long start = System.nanoTime();
+
+    ScheduledFuture<?> expiry = taskScheduler.schedule(timeout, () -> {
+      CompletableFuture<Message> expired = pending.remove(correlationId);
+      if (expired != null) {
+        metrics.replyTimeout(connectionFactory.getName(), describeDestination());
+        expired.completeExceptionally(new JmsClientException("Timeout receiving response for JMSCorrelationID=" + correlationId));
+      }
+    });
+    reply.whenComplete((message, throwable) -> {
+      expiry.cancel(false);
+      if (message != null) {
+        metrics.reply(connectionFactory.getName(), describeDestination(), System.nanoTime() - start);
+      }
+    });
+
+    if (destination != null && !correlationId.startsWith(correlationPrefix)) {
+      try {
+        listen(correlationId, reply);
+      } catch (RuntimeException exception) {
+        cancel(correlationId);
+        throw exception;
+      }
+    }
+    return reply;
+  }
+
+  /**
+   * Receive the reply to a request with a correlation id set by the caller, which the long lived consumer does not
+   * select, with a consumer selecting that id alone. The consumer uses a session of its own, as a session is not
+   * thread safe, which is closed once the reply arrives or the request times out.
+   */
+  private void listen(String correlationId, CompletableFuture<Message> reply) {
+    JMSContext requestContext;
+    Destination target;
+    synchronized (this) {
+      if (context == null) {
+        throw new JmsClientException("Reply destination " + describe() + " is not connected");
+      }
+      requestContext = context.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+      target = replyDestination;
+    }
+    try {
+      requestContext.createConsumer(target, "JMSCorrelationID='" + correlationId + "'").setMessageListener(this);
+    } catch (JMSRuntimeException exception) {
+      requestContext.close();
+      throw exception;
+    }
+    // a context can not be closed by its own message listener
+    reply.whenComplete((message, throwable) -> taskScheduler.schedule(Duration.ZERO, () -> {
+      try {
+        requestContext.close();
+      } catch (JMSRuntimeException exception) {
+        logger.debug("Error closing reply consumer for JMSCorrelationID={} on {}", correlationId, describe(), exception);
+      }
+    }));
+  }
+
+  /**
+   * Stop waiting for a reply, used when the request could not be sent.
+   *
+   * @param correlationId The JMSCorrelationID of the request
+   */
+  public void cancel(String correlationId) {
+    CompletableFuture<Message> reply = pending.remove(correlationId);
+    if (reply != null) {
+      reply.cancel(false);
+    }
+  }
+
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  @Override
+  public void onMessage(Message message) {
+    try {
+      String correlationId = message.getJMSCorrelationID();
+      CompletableFuture<Message> reply = correlationId == null ? null : pending.remove(correlationId);
+      if (reply == null) {
+        logger.warn("Discarding reply on {} with unknown JMSCorrelationID={}", describe(), correlationId);
+        return;
+      }
+      reply.complete(message);
+    } catch (JMSException exception) {
+      logger.error("Unable to read JMSCorrelationID of reply on {}", describe(), exception);
+    }
+  }
+
+  @Override
+  public synchronized void onException(JMSException exception) {
+    logger.warn("Reply consumer on {} lost its connection, reconnecting", describe(), exception);
+    metrics.reconnect(connectionFactory.getName(), "reply");
+    connectionFactory.getReconnects().failed();
+    disconnect();
+    // replies sent to the old temporary queue can never arrive, and the consumers on a named reply destination
+    // were closed with the connection
+    failPending("Connection lost waiting for response", exception);
+    scheduleReconnect();
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    disconnect();
+    failPending("Closed waiting for response", null);
+  }
+
+  private void failPending(String reason, JMSException cause) {
+    pending.keySet().forEach(correlationId -> {
+      CompletableFuture<Message> reply = pending.remove(correlationId);
+      if (reply != null) {
+        reply.completeExceptionally(new JmsClientException(reason + " for JMSCorrelationID=" + correlationId, cause));
+      }
+    });
+  }
+
+  private void scheduleReconnect() {
+    if (closed) {
+      return;
+    }
+    JmsReconnectCoordinator reconnects = connectionFactory.getReconnects();
+    taskScheduler.schedule(reconnects.getDelay(), () -> {
+      synchronized (this) {
+        if (closed || context != null) {
+          return;
+        }
+        try {
+          start();
+          metrics.outage(connectionFactory.getName(), reconnects.connected());
+        } catch (JMSRuntimeException exception) {
+          logger.error("Unable to reconnect reply consumer on {}", describe(), exception);
+          reconnects.failed();
+          scheduleReconnect();
+        }
+      }
+    });
+  }
+
+  private void disconnect() {
+    JMSContext current = context;
+    context = null;
+    replyDestination = null;
+    if (current != null) {
+      try {
+        current.close();
+      } catch (JMSRuntimeException exception) {
+        logger.debug("Error closing reply consumer on {}", describe(), exception);
+      }
+    }
+  }
+
+  private String describe() {
+    return connectionFactory.getName() + ":" + describeDestination();
+  }
+
+  private String describeDestination() {
+    return destination == null ? "<temporary queue>" : destination;
+  }
+}
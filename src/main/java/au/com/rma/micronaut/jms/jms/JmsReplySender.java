@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import javax.jms.Destination;
+import javax.jms.JMSContext;
+import javax.jms.JMSProducer;
+import javax.jms.Message;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the replies of the listeners on a connection.
+ *
+ * Each listener context keeps one producer for its replies, which is released by the listener when it closes the
+ * context.
+ */
+public class JmsReplySender implements AutoCloseable {
+  private final Map<JMSContext, JMSProducer> producers = new ConcurrentHashMap<>();
+
+  /**
+   * Send a reply on a context owned by a listener, reusing the producer of the context until it is released.
+   *
+   * @param context The listener context
+   * @param replyTo The destination to reply to
+   * @param reply The reply
+   */
+  public void send(JMSContext context, Destination replyTo, Message reply) {
+    producers.computeIfAbsent(context, JMSContext::createProducer).send(replyTo, reply);
+  }
+
+  /**
+   * Send a reply on a context that is not owned by a listener, eg. a pooled context.
+   *
+   * @param context The context
+   * @param replyTo The destination to reply to
+   * @param reply The reply
+   */
+  public void sendOnce(JMSContext context, Destination replyTo, Message reply) {
+    context.createProducer().send(replyTo, reply);
+  }
+
+  /**
+   * Forget the producer of a listener context that is being closed.
+   *
+   * @param context The listener context
+   */
+  public void release(JMSContext context) {
+    producers.remove(context);
+  }
+
+  public int getProducerCount() {
+    return producers.size();
+  }
+
+  @Override
+  public void close() {
+    producers.clear();
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.*;
+import java.io.Serializable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A physical connection to the queue manager shared by the {@link JMSContext}s created from it, each context
+ * being a session on the connection created with {@link JMSContext#createContext(int)}.
+ *
+ * A connection has a single {@link ExceptionListener}, so the contexts handed out register their listeners with
+ * the shared connection which notifies all of them when the connection fails. A failed connection is replaced
+ * the next time a context is created and is closed once the last context using it has been closed.
+ *
+ * Delivery can't be stopped for a single session, so {@link JMSContext#stop()} on a context from a shared
+ * connection throws {@link IllegalStateRuntimeException}, close the context instead. The client id belongs to the
+ * connection, it is set once when the connection is created and can't be set through a context.
+ */
+public class JmsSharedConnection {
+  private static final Logger logger = LoggerFactory.getLogger(JmsSharedConnection.class);
+
+  private final String name;
+  private final ConnectionFactory connectionFactory;
+  private final String clientId;
+  private final Set<ExceptionListener> listeners = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger sessions = new AtomicInteger();
+  private Root root;
+  private volatile boolean broken;
+
+  public JmsSharedConnection(String name, ConnectionFactory connectionFactory) {
+    this(name, connectionFactory, null);
+  }
+
+  /**
+   * @param name The name of the connection
+   * @param connectionFactory The provider connection factory
+   * @param clientId The client id set on the connection before it is used, or {@code null}
+   */
+  public JmsSharedConnection(String name, ConnectionFactory connectionFactory, String clientId) {
+    this.name = name;
+    this.connectionFactory = connectionFactory;
+    this.clientId = clientId;
+  }
+
+  /**
+   * Create a session on the connection, connecting first if there is no connection or the last one failed.
+   *
+   * @param sessionMode The session mode of the new context
+   * @return The context, closing it closes the session but leaves the connection open for the other contexts
+   */
+  public synchronized JMSContext createContext(int sessionMode) {
+    if (root == null || broken) {
+      connect();
+    }
+    return new SharedContext(root, root.context.createContext(sessionMode));
+  }
+
+  /**
+   * @return The number of open contexts using the connection
+   */
+  public int getSessions() {
+    return sessions.get();
+  }
+
+  public synchronized void close() {
+    if (root != null) {
+      closeQuietly(root.context);
+      root = null;
+    }
+  }
+
+  private void connect() {
+    if (root != null) {
+      logger.info("Replacing failed shared connection for {}", name);
+      retire(root);
+    }
+    JMSContext created = connectionFactory.createContext();
+    try {
+      if (clientId != null) {
+        created.setClientID(clientId);
+      }
+      created.setExceptionListener(this::onException);
+    } catch (JMSRuntimeException exception) {
+      closeQuietly(created);
+      throw exception;
+    }
+    root = new Root(created);
+    broken = false;
+  }
+
+  private synchronized void retire(Root retired) {
+    retired.retired = true;
+    if (retired.contexts == 0) {
+      closeQuietly(retired.context);
+    }
+  }
+
+  private synchronized void release(Root released) {
+    released.contexts--;
+    if (released.retired && released.contexts == 0) {
+      closeQuietly(released.context);
+    }
+  }
+
+  private void onException(JMSException exception) {
+    logger.warn("Shared connection for {} failed", name, exception);
+    broken = true;
+    listeners.forEach(listener -> listener.onException(exception));
+  }
+
+  private static void closeQuietly(JMSContext context) {
+    try {
+      context.close();
+    } catch (JMSRuntimeException exception) {
+      logger.debug("Error closing shared connection", exception);
+    }
+  }
+
+  /**
+   * A connection and the number of contexts still open on it.
+   */
+  private static class Root {
+    private final JMSContext context;
+    private int contexts;
+    private boolean retired;
+
+    Root(JMSContext context) {
+      this.context = context;
+    }
+  }
+
+  /**
+   * A session on the shared connection that keeps its exception listener to itself rather than replacing the
+   * listener of the connection.
+   */
+  private class SharedContext implements JMSContext {
+    private final Root root;
+    private final JMSContext delegate;
+    private volatile ExceptionListener exceptionListener;
+    private boolean closed;
+
+    SharedContext(Root root, JMSContext delegate) {
+      this.root = root;
+      this.delegate = delegate;
+      root.contexts++;
+      sessions.incrementAndGet();
+    }
+
+    @Override
+    public ExceptionListener getExceptionListener() {
+      return exceptionListener;
+    }
+
+    @Override
+    public void setExceptionListener(ExceptionListener listener) {
+      if (exceptionListener != null) {
+        listeners.remove(exceptionListener);
+      }
+      exceptionListener = listener;
+      if (listener != null) {
+        listeners.add(listener);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (exceptionListener != null) {
+        listeners.remove(exceptionListener);
+      }
+      boolean release;
+      synchronized (this) {
+        release = !closed;
+        closed = true;
+      }
+      try {
+        delegate.close();
+      } finally {
+        if (release) {
+          sessions.decrementAndGet();
+          release(root);
+        }
+      }
+    }
+
+    /**
+     * Stopping a session would stop delivery to every session of the connection.
+     *
+     * @throws IllegalStateRuntimeException Always
+     */
+    @Override
+    public void stop() {
+      throw new IllegalStateRuntimeException(
+          "Contexts on the shared connection for " + name + " can't be stopped, close the context instead");
+    }
+
+    /**
+     * @return Another session on the shared connection, reconnecting if the connection has failed
+     */
+    @Override
+    public JMSContext createContext(int sessionMode) {
+      return JmsSharedConnection.this.createContext(sessionMode);
+    }
+
+    @Override
+    public JMSProducer createProducer() {
+      return delegate.createProducer();
+    }
+
+    @Override
+    public String getClientID() {
+      return delegate.getClientID();
+    }
+
+    /**
+     * The client id belongs to the shared connection and is set when the connection is created.
+     *
+     * @throws IllegalStateRuntimeException Always
+     */
+    @Override
+    public void setClientID(String clientID) {
+      throw new IllegalStateRuntimeException("The client id of the shared connections for " + name
+          + " is set with mq-server." + name + ".client-id, not on a context");
+    }
+
+    @Override
+    public ConnectionMetaData getMetaData() {
+      return delegate.getMetaData();
+    }
+
+    @Override
+    public void start() {
+      delegate.start();
+    }
+
+    @Override
+    public void setAutoStart(boolean autoStart) {
+      delegate.setAutoStart(autoStart);
+    }
+
+    @Override
+    public boolean getAutoStart() {
+      return delegate.getAutoStart();
+    }
+
+    @Override
+    public BytesMessage createBytesMessage() {
+      return delegate.createBytesMessage();
+    }
+
+    @Override
+    public MapMessage createMapMessage() {
+      return delegate.createMapMessage();
+    }
+
+    @Override
+    public Message createMessage() {
+      return delegate.createMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage() {
+      return delegate.createObjectMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage(Serializable object) {
+      return delegate.createObjectMessage(object);
+    }
+
+    @Override
+    public StreamMessage createStreamMessage() {
+      return delegate.createStreamMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage() {
+      return delegate.createTextMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage(String text) {
+      return delegate.createTextMessage(text);
+    }
+
+    @Override
+    public boolean getTransacted() {
+      return delegate.getTransacted();
+    }
+
+    @Override
+    public int getSessionMode() {
+      return delegate.getSessionMode();
+    }
+
+    @Override
+    public void commit() {
+      delegate.commit();
+    }
+
+    @Override
+    public void rollback() {
+      delegate.rollback();
+    }
+
+    @Override
+    public void recover() {
+      delegate.recover();
+    }
+
+    @Override
+    public JMSConsumer createConsumer(Destination destination) {
+      return delegate.createConsumer(destination);
+    }
+
+    @Override
+    public JMSConsumer createConsumer(Destination destination, String messageSelector) {
+      return delegate.createConsumer(destination, messageSelector);
+    }
+
+    @Override
+    public JMSConsumer createConsumer(Destination destination, String messageSelector, boolean noLocal) {
+      return delegate.createConsumer(destination, messageSelector, noLocal);
+    }
+
+    @Override
+    public Queue createQueue(String queueName) {
+      return delegate.createQueue(queueName);
+    }
+
+    @Override
+    public Topic createTopic(String topicName) {
+      return delegate.createTopic(topicName);
+    }
+
+    @Override
+    public JMSConsumer createDurableConsumer(Topic topic, String name) {
+      return delegate.createDurableConsumer(topic, name);
+    }
+
+    @Override
+    public JMSConsumer createDurableConsumer(Topic topic, String name, String messageSelector, boolean noLocal) {
+      return delegate.createDurableConsumer(topic, name, messageSelector, noLocal);
+    }
+
+    @Override
+    public JMSConsumer createSharedDurableConsumer(Topic topic, String name) {
+      return delegate.createSharedDurableConsumer(topic, name);
+    }
+
+    @Override
+    public JMSConsumer createSharedDurableConsumer(Topic topic, String name, String messageSelector) {
+      return delegate.createSharedDurableConsumer(topic, name, messageSelector);
+    }
+
+    @Override
+    public JMSConsumer createSharedConsumer(Topic topic, String sharedSubscriptionName) {
+      return delegate.createSharedConsumer(topic, sharedSubscriptionName);
+    }
+
+    @Override
+    public JMSConsumer createSharedConsumer(Topic topic, String sharedSubscriptionName, String messageSelector) {
+      return delegate.createSharedConsumer(topic, sharedSubscriptionName, messageSelector);
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue) {
+      return delegate.createBrowser(queue);
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue, String messageSelector) {
+      return delegate.createBrowser(queue, messageSelector);
+    }
+
+    @Override
+    public TemporaryQueue createTemporaryQueue() {
+      return delegate.createTemporaryQueue();
+    }
+
+    @Override
+    public TemporaryTopic createTemporaryTopic() {
+      return delegate.createTemporaryTopic();
+    }
+
+    @Override
+    public void unsubscribe(String name) {
+      delegate.unsubscribe(name);
+    }
+
+    @Override
+    public void acknowledge() {
+      delegate.acknowledge();
+    }
+  }
+}
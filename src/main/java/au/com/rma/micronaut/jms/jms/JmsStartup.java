@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import au.com.rma.micronaut.jms.aop.JmsServerException;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration;
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ListenerConfiguration;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.scheduling.TaskExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Prepares the connections once the application context has started, before the application is reported as
+ * started. The client pools of every connection are prewarmed in parallel, then for connections configured with
+ * {@link ListenerConfiguration#isAwaitAttached()} startup waits until each listener has attached its consumers.
+ */
+@Singleton
+public class JmsStartup implements ApplicationEventListener<StartupEvent> {
+  private static final Logger logger = LoggerFactory.getLogger(JmsStartup.class);
+
+  private final JmsHelper jmsHelper;
+  private final List<ServerConfiguration> configurations;
+  private final ExecutorService executorService;
+
+  public JmsStartup(
+      JmsHelper jmsHelper,
+      List<ServerConfiguration> configurations,
+      @Named(TaskExecutors.IO) ExecutorService executorService) {
+    this.jmsHelper = jmsHelper;
+    this.configurations = configurations;
+    this.executorService = executorService;
+  }
+
+  @Override
+  public void onApplicationEvent(StartupEvent event) {
+    prewarm();
+    awaitListeners();
+  }
+
+  private void prewarm() {
+    CompletableFuture<?>[] prewarming = configurations.stream()
+        .filter(configuration -> configuration.getPool().isEnabled() && configuration.getPool().getPrewarm() > 0)
+        .map(configuration -> CompletableFuture.runAsync(() -> {
+          logger.debug("Prewarming {} JMS contexts for {}", configuration.getPool().getPrewarm(), configuration.getName());
+          jmsHelper.getPool(configuration.getName()).prewarm(configuration.getPool().getPrewarm());
+        }, executorService))
+        .toArray(CompletableFuture[]::new);
+    try {
+      CompletableFuture.allOf(prewarming).join();
+    } catch (CompletionException exception) {
+      logger.warn("Unable to prewarm JMS contexts, they will be created on first use", exception.getCause());
+    }
+  }
+
+  private void awaitListeners() {
+    long started = System.currentTimeMillis();
+    for (JmsListenerContainer listener : jmsHelper.getListeners()) {
+      ListenerConfiguration configuration = jmsHelper.getConfiguration(listener.getConnectionName()).getListener();
+      if (!configuration.isAwaitAttached()) {
+        continue;
+      }
+      // the attach timeout is one deadline for all the listeners, measured from when startup began waiting
+      Duration remaining = Duration.ofMillis(
+          Math.max(0, started + configuration.getAttachTimeout().toMillis() - System.currentTimeMillis()));
+      try {
+        if (!listener.awaitAttached(remaining)) {
+          throw new JmsServerException("Listener on " + listener.getOptions().getDestination()
+              + " did not attach within " + configuration.getAttachTimeout());
+        }
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new JmsServerException("Interrupted waiting for listeners to attach", exception);
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads that run listener consumers. Pull consumers may use virtual threads when the JDK supports
+ * them, work that must run in order on a single context always uses a single platform thread.
+ */
+public class ListenerThreads {
+  private static final Logger logger = LoggerFactory.getLogger(ListenerThreads.class);
+
+  private ListenerThreads() {
+  }
+
+  /**
+   * Create an executor for independent blocking tasks. The tasks may run concurrently on any number of virtual
+   * threads, so it must not be used for work that has to run in order.
+   *
+   * @param name The name used for the threads
+   * @param maxThreads The size of the pool used when virtual threads are not available
+   * @return A virtual thread per task executor, or a fixed pool of platform threads
+   */
+  public static ExecutorService newExecutor(String name, int maxThreads) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (NoSuchMethodException exception) {
+      logger.debug("Virtual threads are not available, using a pool of {} threads for {}", maxThreads, name);
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      logger.warn("Unable to create virtual threads, using a pool of {} threads for {}", maxThreads, name, exception);
+    }
+    return Executors.newFixedThreadPool(maxThreads, threadFactory(name));
+  }
+
+  /**
+   * @param name The name of the thread
+   * @return An executor running its tasks one at a time in the order they were submitted
+   */
+  public static ExecutorService newSingleThreadExecutor(String name) {
+    return Executors.newSingleThreadExecutor(threadFactory(name));
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
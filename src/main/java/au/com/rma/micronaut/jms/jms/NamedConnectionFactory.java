@@ -22,6 +22,7 @@
  */
 package au.com.rma.micronaut.jms.jms;
 
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ReconnectConfiguration;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import io.micronaut.core.naming.Named;
 
@@ -29,15 +30,49 @@ import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSContext;
 import javax.jms.JMSException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class NamedConnectionFactory implements ConnectionFactory, Named {
+/**
+ * A connection factory with the name of its configuration. When created with a number of shared connections the
+ * contexts it creates are sessions spread over that many {@link JmsSharedConnection}s instead of each context opening
+ * its own connection to the queue manager.
+ */
+public class NamedConnectionFactory implements ConnectionFactory, Named, AutoCloseable {
 
   private String name;
   private ConnectionFactory connectionFactory;
+  private JmsSharedConnection[] sharedConnections;
+  private JmsReconnectCoordinator reconnects;
+  private AtomicInteger next = new AtomicInteger();
 
   public NamedConnectionFactory(String name, ConnectionFactory connectionFactory) {
+    this(name, connectionFactory, 0);
+  }
+
+  public NamedConnectionFactory(String name, ConnectionFactory connectionFactory, int connections) {
+    this(name, connectionFactory, connections, null, new JmsReconnectCoordinator(new ReconnectConfiguration()));
+  }
+
+  /**
+   * @param name The name of the connection
+   * @param connectionFactory The provider connection factory
+   * @param connections The number of connections shared by the contexts created, 0 for a connection per context
+   * @param clientId The client id set on each shared connection, or {@code null}
+   * @param reconnects Coordinates reconnecting the consumers using the connection
+   */
+  public NamedConnectionFactory(
+      String name,
+      ConnectionFactory connectionFactory,
+      int connections,
+      String clientId,
+      JmsReconnectCoordinator reconnects) {
     this.name = name;
     this.connectionFactory = connectionFactory;
+    this.reconnects = reconnects;
+    this.sharedConnections = new JmsSharedConnection[connections];
+    for (int i = 0; i < connections; i++) {
+      sharedConnections[i] = new JmsSharedConnection(name, connectionFactory, clientId);
+    }
   }
 
   @NonNull
@@ -45,6 +80,10 @@ public class NamedConnectionFactory implements ConnectionFactory, Named {
     return name;
   }
 
+  public JmsReconnectCoordinator getReconnects() {
+    return reconnects;
+  }
+
   @Override
   public Connection createConnection() throws JMSException {
     return connectionFactory.createConnection();
@@ -57,6 +96,9 @@ public class NamedConnectionFactory implements ConnectionFactory, Named {
 
   @Override
   public JMSContext createContext() {
+    if (isShared()) {
+      return nextConnection().createContext(JMSContext.AUTO_ACKNOWLEDGE);
+    }
     return connectionFactory.createContext();
   }
 
@@ -72,6 +114,38 @@ public class NamedConnectionFactory implements ConnectionFactory, Named {
 
   @Override
   public JMSContext createContext(int sessionMode) {
+    if (isShared()) {
+      return nextConnection().createContext(sessionMode);
+    }
     return connectionFactory.createContext(sessionMode);
   }
+
+  /**
+   * @return {@code true} if contexts are created as sessions of shared connections
+   */
+  public boolean isShared() {
+    return sharedConnections.length > 0;
+  }
+
+  /**
+   * @return The number of open contexts using the shared connections
+   */
+  public int getSharedSessions() {
+    int sessions = 0;
+    for (JmsSharedConnection connection : sharedConnections) {
+      sessions += connection.getSessions();
+    }
+    return sessions;
+  }
+
+  @Override
+  public void close() {
+    for (JmsSharedConnection connection : sharedConnections) {
+      connection.close();
+    }
+  }
+
+  private JmsSharedConnection nextConnection() {
+    return sharedConnections[(next.getAndIncrement() & Integer.MAX_VALUE) % sharedConnections.length];
+  }
 }
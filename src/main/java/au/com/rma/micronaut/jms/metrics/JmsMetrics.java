@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.metrics;
+
+import io.micronaut.context.BeanContext;
+import io.micronaut.core.reflect.ClassUtils;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.function.Supplier;
+
+/**
+ * Instrumentation of the clients, listeners and connections, tagged by connection name and destination.
+ *
+ * Measurements are published to Micrometer when it is on the classpath and a {@code MeterRegistry} bean
+ * is available, otherwise they are discarded.
+ */
+@Singleton
+public class JmsMetrics {
+  public static final String CLIENT_SEND = "jms.client.send";
+  public static final String CLIENT_REPLY = "jms.client.reply";
+  public static final String CLIENT_REPLY_TIMEOUTS = "jms.client.reply.timeouts";
+  public static final String CLIENT_IN_FLIGHT = "jms.client.in-flight";
+  public static final String LISTENER_PROCESS = "jms.listener.process";
+  public static final String LISTENER_REDELIVERIES = "jms.listener.redeliveries";
+  public static final String LISTENER_CONSUMERS = "jms.listener.consumers";
+  public static final String LISTENER_BUFFERED = "jms.listener.buffered";
+  public static final String CONVERSION = "jms.conversion";
+  public static final String RECONNECTS = "jms.connection.reconnects";
+  public static final String SESSIONS = "jms.connection.sessions";
+  public static final String OUTAGE = "jms.connection.outage";
+  public static final String POOL_ACTIVE = "jms.pool.active";
+  public static final String POOL_IDLE = "jms.pool.idle";
+  public static final String POOL_MAX = "jms.pool.max";
+
+  private static final String MICROMETER = "io.micrometer.core.instrument.MeterRegistry";
+
+  private final JmsMetricsRecorder recorder;
+
+  /**
+   * Create metrics that discard every measurement.
+   */
+  public JmsMetrics() {
+    this(JmsMetricsRecorder.NOOP);
+  }
+
+  public JmsMetrics(JmsMetricsRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  @Inject
+  public JmsMetrics(BeanContext beanContext) {
+    this(ClassUtils.isPresent(MICROMETER, JmsMetrics.class.getClassLoader())
+        ? MicrometerRecorderFactory.create(beanContext)
+        : JmsMetricsRecorder.NOOP);
+  }
+
+  public void send(String connection, String destination, long nanos, boolean success) {
+    recorder.timer(CLIENT_SEND, nanos, "connection", connection, "destination", destination, "result", result(success));
+  }
+
+  public void reply(String connection, String destination, long nanos) {
+    recorder.timer(CLIENT_REPLY, nanos, "connection", connection, "destination", destination);
+  }
+
+  public void replyTimeout(String connection, String destination) {
+    recorder.counter(CLIENT_REPLY_TIMEOUTS, "connection", connection, "destination", destination);
+  }
+
+  public void inFlight(String connection, String destination, Supplier<Number> value) {
+    recorder.gauge(CLIENT_IN_FLIGHT, value, "connection", connection, "destination", destination);
+  }
+
+  public void listener(String connection, String destination, long nanos, boolean success) {
+    recorder.timer(LISTENER_PROCESS, nanos, "connection", connection, "destination", destination, "result", result(success));
+  }
+
+  public void redelivery(String connection, String destination) {
+    recorder.counter(LISTENER_REDELIVERIES, "connection", connection, "destination", destination);
+  }
+
+  /**
+   * @return Removes the gauge once the listener is closed
+   */
+  public Runnable consumers(String connection, String destination, Supplier<Number> value) {
+    return recorder.gauge(LISTENER_CONSUMERS, value, "connection", connection, "destination", destination);
+  }
+
+  /**
+   * @param value The number of sessions open on the shared connections of a connection factory
+   */
+  public void sessions(String connection, Supplier<Number> value) {
+    recorder.gauge(SESSIONS, value, "connection", connection);
+  }
+
+  /**
+   * @param value The number of messages received but not yet processed by the listener
+   * @return Removes the gauge once the listener is closed
+   */
+  public Runnable buffered(String connection, String destination, Supplier<Number> value) {
+    return recorder.gauge(LISTENER_BUFFERED, value, "connection", connection, "destination", destination);
+  }
+
+  /**
+   * @param direction {@code serialize} or {@code deserialize}
+   * @param nanos The time taken to convert the body
+   */
+  public void conversion(String direction, long nanos) {
+    recorder.timer(CONVERSION, nanos, "direction", direction);
+  }
+
+  /**
+   * @param connection The connection name
+   * @param component The component that reconnected eg. {@code listener}
+   */
+  public void reconnect(String connection, String component) {
+    recorder.counter(RECONNECTS, "connection", connection, "component", component);
+  }
+
+  /**
+   * @param connection The connection name
+   * @param nanos The time from the first failure to the first consumer reconnecting, 0 if there was no outage
+   */
+  public void outage(String connection, long nanos) {
+    if (nanos > 0) {
+      recorder.timer(OUTAGE, nanos, "connection", connection);
+    }
+  }
+
+  public void pool(String connection, String sessionMode, Supplier<Number> active, Supplier<Number> idle, Supplier<Number> max) {
+    recorder.gauge(POOL_ACTIVE, active, "connection", connection, "session-mode", sessionMode);
+    recorder.gauge(POOL_IDLE, idle, "connection", connection, "session-mode", sessionMode);
+    recorder.gauge(POOL_MAX, max, "connection", connection, "session-mode", sessionMode);
+  }
+
+  private static String result(boolean success) {
+    return success ? "success" : "failure";
+  }
+
+  private static class MicrometerRecorderFactory {
+    private static JmsMetricsRecorder create(BeanContext beanContext) {
+      return beanContext.findBean(io.micrometer.core.instrument.MeterRegistry.class)
+          .<JmsMetricsRecorder>map(MicrometerJmsMetricsRecorder::new)
+          .orElse(JmsMetricsRecorder.NOOP);
+    }
+  }
+}
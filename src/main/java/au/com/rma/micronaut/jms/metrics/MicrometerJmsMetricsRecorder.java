@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JmsMetricsRecorder} publishing to a Micrometer {@link MeterRegistry}. This class is only loaded
+ * when Micrometer is on the classpath.
+ *
+ * Timers and counters are registered once per name and tags and then found in a local map, so recording on the
+ * send and receive paths does not build tags or look the meter up in the registry.
+ */
+class MicrometerJmsMetricsRecorder implements JmsMetricsRecorder {
+  private final MeterRegistry meterRegistry;
+  private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+  private final Map<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+
+  MicrometerJmsMetricsRecorder(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void timer(String name, long nanos, String... tags) {
+    MeterKey key = new MeterKey(name, tags);
+    Timer timer = timers.get(key);
+    if (timer == null) {
+      timer = timers.computeIfAbsent(key, ignored -> Timer.builder(name)
+          .tags(tags)
+          .register(meterRegistry));
+    }
+    timer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void counter(String name, String... tags) {
+    MeterKey key = new MeterKey(name, tags);
+    Counter counter = counters.get(key);
+    if (counter == null) {
+      counter = counters.computeIfAbsent(key, ignored -> Counter.builder(name)
+          .tags(tags)
+          .register(meterRegistry));
+    }
+    counter.increment();
+  }
+
+  @Override
+  public Runnable gauge(String name, Supplier<Number> value, String... tags) {
+    Gauge gauge = Gauge.builder(name, value)
+        .tags(tags)
+        .strongReference(true)
+        .register(meterRegistry);
+    return () -> meterRegistry.remove(gauge);
+  }
+
+  private static final class MeterKey {
+    private final String name;
+    private final String[] tags;
+    private final int hash;
+
+    private MeterKey(String name, String[] tags) {
+      this.name = name;
+      this.tags = tags;
+      this.hash = 31 * name.hashCode() + Arrays.hashCode(tags);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof MeterKey)) {
+        return false;
+      }
+      MeterKey key = (MeterKey)other;
+      return hash == key.hash && name.equals(key.name) && Arrays.equals(tags, key.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.conversion.ConversionHelper
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micronaut.core.convert.ConversionService
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.jms.BytesMessage
+import javax.jms.JMSContext
+import java.nio.ByteBuffer
+
+class ConversionHelperSpec extends Specification {
+  private ConversionHelper conversionHelper = new ConversionHelper(ConversionService.SHARED, new ObjectMapper())
+
+  @Unroll
+  def "verify the size of #description bodies is their encoded byte length"() {
+    expect:
+    ConversionHelper.bodySize(body) == size
+
+    where:
+    description     | body                                   | size
+    'ASCII'         | 'HELLO'                                | 5
+    'two byte'      | '\u00e9' * 4                           | 8
+    'three byte'    | '\u20ac\u20ac'                         | 6
+    'supplementary' | new String(Character.toChars(0x1F600)) | 4
+    'unpaired'      | '\uD800'                               | 1
+    'binary'        | new byte[7]                            | 7
+  }
+
+  @Unroll
+  def "verify the size of a string matches its UTF-8 encoding: #text"() {
+    expect:
+    ConversionHelper.bodySize(text) == text.getBytes('UTF-8').length
+
+    where:
+    text << ['plain', 'na\u00efve caf\u00e9', '\u65e5\u672c\u8a9e', 'mixed \uD83D\uDE00 emoji']
+  }
+
+  def "verify the compression threshold is compared against the encoded size"() {
+    given:
+    def compression = new ServerConfiguration.CompressionConfiguration()
+    compression.enabled = true
+    compression.threshold = 100
+
+    expect: '60 characters are 120 bytes in UTF-8 so the body is over the threshold'
+    conversionHelper.compressBody('\u00e9' * 60, compression) instanceof ConversionHelper.CompressedBody
+    conversionHelper.compressBody('e' * 60, compression) == 'e' * 60
+  }
+
+  @Unroll
+  def "verify a #description body is sent as a BytesMessage and read back"() {
+    given:
+    def context = Mock(JMSContext)
+    def message = Mock(BytesMessage)
+    def written = new ByteArrayOutputStream()
+    context.createBytesMessage() >> message
+    message.writeBytes(_ as byte[]) >> { arguments -> written.write(arguments[0] as byte[]) }
+    message.writeBytes(_ as byte[], _, _) >> { arguments ->
+      written.write(arguments[0] as byte[], arguments[1] as int, arguments[2] as int)
+    }
+    message.getBody(byte[]) >> { written.toByteArray() }
+
+    when:
+    def sent = conversionHelper.createMessage(context, conversionHelper.serializeBody(body, false))
+
+    then:
+    sent.is(message)
+    0 * context.createTextMessage(_)
+    written.toByteArray() == [1, 2, 3] as byte[]
+    conversionHelper.readBody(sent, byte[]) == [1, 2, 3] as byte[]
+    conversionHelper.readBody(sent, ByteBuffer) == ByteBuffer.wrap([1, 2, 3] as byte[])
+
+    where:
+    description          | body
+    'byte[]'             | [1, 2, 3] as byte[]
+    'ByteBuffer'         | ByteBuffer.wrap([1, 2, 3] as byte[])
+    'ByteBuffer slice'   | ByteBuffer.wrap([0, 1, 2, 3, 4] as byte[], 1, 3).slice()
+    'direct ByteBuffer'  | ByteBuffer.allocateDirect(3).put([1, 2, 3] as byte[]).flip()
+  }
+
+  def "verify a JSON body written as bytes is read back from a BytesMessage"() {
+    given:
+    def message = Mock(BytesMessage)
+    def body = conversionHelper.serializeBody([name: "widget", count: 2], true)
+    message.getBody(byte[]) >> body
+
+    expect:
+    body instanceof byte[]
+    conversionHelper.readBody(message, Map) == [name: "widget", count: 2]
+  }
+
+  def "verify the reader and writer of a type are created once and reused"() {
+    given:
+    def objectMapper = Spy(ObjectMapper)
+    def helper = new ConversionHelper(ConversionService.SHARED, objectMapper)
+    def message = Mock(BytesMessage)
+    message.getBody(byte[]) >> '{"name":"widget","count":2}'.getBytes("UTF-8")
+
+    when:
+    helper.prepare(Widget)
+    3.times {
+      assert helper.convertObjectToString(new Widget(name: "widget", count: 2)) == '{"name":"widget","count":2}'
+      assert helper.serializeBody(new Widget(name: "widget", count: 2), true) instanceof byte[]
+      assert helper.convertMessageToObject('{"name":"widget","count":2}', Widget).count == 2
+      assert helper.readBody(message, Widget).name == "widget"
+    }
+
+    then:
+    1 * objectMapper.writerFor(Widget)
+    1 * objectMapper.readerFor(Widget)
+  }
+
+  def "verify types converted from a string never create a reader"() {
+    given:
+    def objectMapper = Spy(ObjectMapper)
+    def helper = new ConversionHelper(ConversionService.SHARED, objectMapper)
+
+    when:
+    helper.prepare(Integer)
+    def values = (1..3).collect { helper.convertMessageToObject("42", Integer) }
+
+    then:
+    values == [42, 42, 42]
+    0 * objectMapper.readerFor(_)
+    0 * objectMapper.writerFor(_)
+  }
+
+  static class Widget {
+    String name
+    int count
+  }
+}
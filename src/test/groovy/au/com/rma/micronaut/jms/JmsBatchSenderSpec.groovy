@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.jms.JmsBatchSender
+import au.com.rma.micronaut.jms.jms.JmsHelper
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextHandler
+import io.micronaut.scheduling.TaskScheduler
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import javax.jms.JMSRuntimeException
+import java.time.Duration
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.atomic.AtomicReference
+
+class JmsBatchSenderSpec extends Specification {
+  private JmsHelper jmsHelper
+  private TaskScheduler taskScheduler
+  private Runnable scheduledFlush
+
+  def setup() {
+    jmsHelper = Mock(JmsHelper)
+    taskScheduler = Mock(TaskScheduler)
+    taskScheduler.schedule(_ as Duration, _ as Runnable) >> { Duration delay, Runnable task ->
+      scheduledFlush = task
+      Mock(ScheduledFuture)
+    }
+  }
+
+  def "verify a failed fire-and-forget batch fails its own sends and not the next send"() {
+    given:
+    def failure = new JMSRuntimeException("MQRC_Q_FULL")
+    jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { throw failure }
+    def sender = new JmsBatchSender(jmsHelper, "foo", 2, Duration.ofSeconds(1), taskScheduler)
+
+    when:
+    def first = sender.send({ }, true)
+    def second = sender.send({ }, true)
+
+    then:
+    first.isCompletedExceptionally()
+    second.isCompletedExceptionally()
+
+    when:
+    sender.send({ }, true)
+
+    then:
+    noExceptionThrown()
+
+    cleanup:
+    sender.close()
+  }
+
+  def "verify a failed batch is sent again up to the number of retries"() {
+    given:
+    def sender = new JmsBatchSender(jmsHelper, "foo", 2, Duration.ofSeconds(1), 2, taskScheduler)
+
+    when:
+    def first = sender.send({ }, true)
+    def second = sender.send({ }, false)
+
+    then:
+    2 * jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { throw new JMSRuntimeException("MQRC_Q_FULL") }
+    1 * jmsHelper.withTransactedClient("foo", _ as ContextHandler)
+    first.get() == null
+    second.get() == null
+
+    cleanup:
+    sender.close()
+  }
+
+  def "verify a batch that still fails after its retries fails every send"() {
+    given:
+    def failure = new JMSRuntimeException("MQRC_Q_FULL")
+    def sender = new JmsBatchSender(jmsHelper, "foo", 1, Duration.ofSeconds(1), 1, taskScheduler)
+
+    when:
+    sender.send({ }, false).get()
+
+    then:
+    2 * jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { throw failure }
+    def exception = thrown(ExecutionException)
+    exception.cause == failure
+
+    cleanup:
+    sender.close()
+  }
+
+  def "verify a failed batch of observed sends only fails their futures"() {
+    given:
+    jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { throw new JMSRuntimeException("MQRC_Q_FULL") }
+    def sender = new JmsBatchSender(jmsHelper, "foo", 1, Duration.ofSeconds(1), taskScheduler)
+
+    when:
+    def sent = sender.send({ }, false)
+    sent.get()
+
+    then:
+    thrown(ExecutionException)
+
+    when:
+    sender.send({ }, false)
+
+    then:
+    noExceptionThrown()
+
+    cleanup:
+    sender.close()
+  }
+
+  def "verify a scheduled flush writes the batch on the sender thread"() {
+    given:
+    def writer = new AtomicReference<Thread>()
+    jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { writer.set(Thread.currentThread()) }
+    def sender = new JmsBatchSender(jmsHelper, "foo", 10, Duration.ofMillis(50), taskScheduler)
+    def conditions = new PollingConditions(timeout: 5)
+
+    when:
+    def sent = sender.send({ }, true)
+    scheduledFlush.run()
+
+    then:
+    conditions.eventually {
+      assert sent.isDone()
+      assert writer.get() != Thread.currentThread()
+      assert writer.get().name.startsWith("jms-batch-foo")
+    }
+
+    cleanup:
+    sender.close()
+  }
+}
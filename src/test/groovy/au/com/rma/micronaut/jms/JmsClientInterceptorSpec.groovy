@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.aop.JmsClientException
+import au.com.rma.micronaut.jms.aop.JmsClientInterceptor
+import au.com.rma.micronaut.jms.aop.JmsClientProcessor
+import au.com.rma.micronaut.jms.binding.JmsClientPropertyBinder
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.conversion.ConversionHelper
+import au.com.rma.micronaut.jms.jms.JmsHelper
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
+import au.com.rma.micronaut.jms.metrics.JmsMetrics
+import au.com.rma.micronaut.jms.support.AsyncSender
+import au.com.rma.micronaut.jms.support.PropertySender
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micronaut.aop.Interceptor
+import io.micronaut.context.BeanContext
+import io.micronaut.context.Qualifier
+import io.micronaut.core.convert.ConversionService
+import io.micronaut.inject.BeanDefinition
+import io.micronaut.scheduling.TaskScheduler
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import javax.jms.CompletionListener
+import javax.jms.ConnectionFactory
+import javax.jms.JMSContext
+import javax.jms.JMSProducer
+import javax.jms.Queue
+import javax.jms.TextMessage
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class JmsClientInterceptorSpec extends Specification {
+  private ExecutorService executorService = Executors.newSingleThreadExecutor()
+  private PollingConditions conditions = new PollingConditions(timeout: 1)
+  private ServerConfiguration configuration = new ServerConfiguration("admin")
+  private JMSContext context = Mock(JMSContext)
+  private JMSProducer producer = Mock(JMSProducer)
+  private TextMessage message = Mock(TextMessage)
+  private TaskScheduler taskScheduler = Mock(TaskScheduler)
+  private CompletionListener completionListener
+  private Callable<?> sendTimeout
+  private JmsHelper jmsHelper
+  private JmsClientPropertyBinder propertyBinder
+  private JmsClientInterceptor interceptor
+
+  def setup() {
+    def connectionFactory = Mock(ConnectionFactory)
+    connectionFactory.createContext() >> context
+    context.createProducer() >> producer
+    context.createQueue(_) >> Mock(Queue)
+    context.createTextMessage(_) >> message
+    producer.setAsync(_) >> { CompletionListener listener ->
+      completionListener = listener
+      producer
+    }
+    taskScheduler.schedule(_ as Duration, _ as Callable) >> { Duration delay, Callable<?> task ->
+      sendTimeout = task
+      Mock(ScheduledFuture)
+    }
+    taskScheduler.scheduleWithFixedDelay(_, _, _) >> Mock(ScheduledFuture)
+
+    def metrics = new JmsMetrics()
+    def conversionHelper = new ConversionHelper(ConversionService.SHARED, new ObjectMapper())
+    jmsHelper = new JmsHelper([new NamedConnectionFactory("admin", connectionFactory)], [configuration],
+        executorService, taskScheduler, metrics)
+    propertyBinder = Spy(JmsClientPropertyBinder, constructorArgs: [conversionHelper])
+    interceptor = new JmsClientInterceptor(conversionHelper, jmsHelper, propertyBinder, metrics, executorService,
+        taskScheduler)
+  }
+
+  def cleanup() {
+    executorService.shutdownNow()
+  }
+
+  def "verify an asynchronous send keeps its context leased until the send is confirmed"() {
+    when:
+    CompletableFuture<?> sent = client().sendAsync("hello")
+
+    then:
+    1 * producer.send(_, message) >> producer
+    !sent.isDone()
+    jmsHelper.getPool("admin").active == 1
+
+    when:
+    completionListener.onCompletion(message)
+
+    then:
+    sent.get(1, TimeUnit.SECONDS) == null
+    conditions.eventually {
+      assert jmsHelper.getPool("admin").active == 0
+      assert jmsHelper.getPool("admin").idle == 1
+    }
+    0 * context.close()
+  }
+
+  def "verify an unconfirmed send fails after the send timeout and closes its context"() {
+    given:
+    configuration.sendTimeout = Duration.ofMillis(250)
+
+    when:
+    CompletableFuture<?> sent = client().sendAsync("hello")
+
+    then:
+    1 * taskScheduler.schedule(Duration.ofMillis(250), _ as Callable) >> { Duration delay, Callable<?> task ->
+      sendTimeout = task
+      Mock(ScheduledFuture)
+    }
+    jmsHelper.getPool("admin").active == 1
+
+    when:
+    sendTimeout.call()
+    sent.get(1, TimeUnit.SECONDS)
+
+    then:
+    def exception = thrown(ExecutionException)
+    exception.cause instanceof JmsClientException
+    conditions.eventually {
+      assert jmsHelper.getPool("admin").active == 0
+      assert jmsHelper.getPool("admin").idle == 0
+    }
+    1 * context.close()
+  }
+
+  def "verify a failed asynchronous send fails the call and closes its context"() {
+    when:
+    CompletableFuture<?> sent = client().sendAsync("hello")
+    completionListener.onException(message, new Exception("MQRC_Q_FULL"))
+    sent.get(1, TimeUnit.SECONDS)
+
+    then:
+    def exception = thrown(ExecutionException)
+    exception.cause instanceof JmsClientException
+    exception.cause.cause.message == "MQRC_Q_FULL"
+    conditions.eventually {
+      assert jmsHelper.getPool("admin").active == 0
+    }
+    1 * context.close()
+  }
+
+  def "verify a reactive send only sends once it is subscribed to"() {
+    when:
+    Publisher<?> publisher = client().sendReactive("hello")
+
+    then:
+    0 * producer.send(_, _)
+
+    when:
+    def completed = new CompletableFuture<Boolean>()
+    publisher.subscribe(new Subscriber<Object>() {
+      void onSubscribe(Subscription subscription) { subscription.request(1) }
+      void onNext(Object value) { }
+      void onError(Throwable throwable) { completed.completeExceptionally(throwable) }
+      void onComplete() { completed.complete(true) }
+    })
+
+    then:
+    1 * producer.send(_, message) >> producer
+    jmsHelper.getPool("admin").active == 1
+
+    when:
+    completionListener.onCompletion(message)
+
+    then:
+    completed.get(1, TimeUnit.SECONDS)
+  }
+
+  def "verify a property argument is not sent as the body"() {
+    when:
+    client(PropertySender).send("42", "hello")
+
+    then:
+    1 * context.createTextMessage("hello") >> message
+    1 * message.setJMSCorrelationID("42")
+    1 * producer.send(_, message) >> producer
+  }
+
+  def "verify client plans are resolved when the application starts"() {
+    given:
+    def definition = Class.forName(AsyncSender.package.name + '.$AsyncSender$InterceptedDefinition')
+        .newInstance() as BeanDefinition<?>
+    def beanContext = Mock(BeanContext)
+    beanContext.getBeanDefinitions(_ as Qualifier) >> [definition]
+
+    when:
+    new JmsClientProcessor(beanContext, interceptor).onApplicationEvent(null)
+
+    then:
+    2 * propertyBinder.plan(_)
+
+    when:
+    client().sendAsync("hello")
+
+    then:
+    0 * propertyBinder.plan(_)
+    1 * producer.send(_, message) >> producer
+  }
+
+  /**
+   * Create the implementation of the client interface compiled by Micronaut, calling the interceptor.
+   */
+  private <T> T client(Class<T> clientType = AsyncSender) {
+    def constructor = Class.forName(clientType.name + '$Intercepted')
+        .getDeclaredConstructor(BeanContext, Qualifier, Interceptor[])
+    constructor.accessible = true
+    constructor.newInstance(Mock(BeanContext), null, [interceptor] as Interceptor[]) as T
+  }
+}
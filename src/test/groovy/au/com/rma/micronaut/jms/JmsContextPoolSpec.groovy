@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.aop.JmsClientException
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.jms.JmsContextPool
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
+import spock.lang.Specification
+
+import javax.jms.ConnectionFactory
+import javax.jms.IllegalStateRuntimeException
+import javax.jms.JMSContext
+import javax.jms.TemporaryQueue
+import java.time.Duration
+
+class JmsContextPoolSpec extends Specification {
+  private ConnectionFactory connectionFactory
+  private ServerConfiguration.PoolConfiguration configuration
+  private JmsContextPool pool
+
+  def setup() {
+    connectionFactory = Mock(ConnectionFactory)
+    configuration = new ServerConfiguration.PoolConfiguration()
+    configuration.maxSize = 1
+    configuration.maxWait = Duration.ofMillis(10)
+    pool = new JmsContextPool(new NamedConnectionFactory("foo", connectionFactory), configuration)
+  }
+
+  def "verify released contexts are reused"() {
+    given:
+    def context = Mock(JMSContext)
+
+    when:
+    def first = pool.borrow()
+    pool.release(first)
+    def second = pool.borrow()
+
+    then:
+    1 * connectionFactory.createContext() >> context
+    first.context == context
+    second.is(first)
+  }
+
+  def "verify borrow times out when the pool is exhausted"() {
+    given:
+    connectionFactory.createContext() >> Mock(JMSContext)
+    pool.borrow()
+
+    when:
+    pool.borrow()
+
+    then:
+    thrown(JmsClientException)
+  }
+
+  def "verify invalidated contexts are closed and replaced"() {
+    given:
+    def broken = Mock(JMSContext)
+    def replacement = Mock(JMSContext)
+
+    when:
+    def first = pool.borrow()
+    first.invalidate()
+    pool.release(first)
+    def second = pool.borrow()
+
+    then:
+    2 * connectionFactory.createContext() >>> [broken, replacement]
+    1 * broken.close()
+    second.context == replacement
+  }
+
+  def "verify contexts that fail validation are replaced"() {
+    given:
+    def stale = Mock(JMSContext)
+    def replacement = Mock(JMSContext)
+    connectionFactory.createContext() >>> [stale, replacement]
+    configuration.validationInterval = Duration.ZERO
+    pool.release(pool.borrow())
+
+    when:
+    def pooled = pool.borrow()
+
+    then:
+    1 * stale.createTemporaryQueue() >> { throw new IllegalStateRuntimeException("closed") }
+    1 * stale.close()
+    pooled.context == replacement
+  }
+
+  def "verify recently used contexts are not validated"() {
+    given:
+    def context = Mock(JMSContext)
+    connectionFactory.createContext() >> context
+    pool.release(pool.borrow())
+
+    when:
+    def pooled = pool.borrow()
+
+    then:
+    0 * context.createTemporaryQueue()
+    pooled.context == context
+  }
+
+  def "verify idle contexts are validated with a round trip"() {
+    given:
+    def context = Mock(JMSContext)
+    def temporaryQueue = Mock(TemporaryQueue)
+    connectionFactory.createContext() >> context
+    configuration.validationInterval = Duration.ZERO
+    pool.release(pool.borrow())
+
+    when:
+    def pooled = pool.borrow()
+
+    then:
+    1 * context.createTemporaryQueue() >> temporaryQueue
+    1 * temporaryQueue.delete()
+    pooled.context == context
+  }
+
+  def "verify idle contexts are evicted"() {
+    given:
+    def context = Mock(JMSContext)
+    connectionFactory.createContext() >> context
+    configuration.idleTimeout = Duration.ofMillis(-1)
+    pool.release(pool.borrow())
+
+    when:
+    pool.evict()
+
+    then:
+    1 * context.close()
+    pool.idle == 0
+  }
+}
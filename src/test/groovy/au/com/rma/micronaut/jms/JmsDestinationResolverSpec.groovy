@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType
+import au.com.rma.micronaut.jms.jms.JmsDestinationResolver
+import spock.lang.Specification
+
+import javax.jms.JMSContext
+import javax.jms.Queue
+import javax.jms.Topic
+
+class JmsDestinationResolverSpec extends Specification {
+
+  def "verify destinations are created once and reused"() {
+    given:
+    def resolver = new JmsDestinationResolver([:])
+    def first = Mock(JMSContext)
+    def second = Mock(JMSContext)
+    def queue = Mock(Queue)
+
+    when:
+    def resolved = resolver.resolve("DEV.QUEUE.1", JmsDestinationType.QUEUE, first)
+    def reused = resolver.resolve("DEV.QUEUE.1", JmsDestinationType.QUEUE, second)
+
+    then:
+    1 * first.createQueue("DEV.QUEUE.1") >> queue
+    0 * second._
+    resolved == queue
+    reused == queue
+  }
+
+  def "verify declared destinations are resolved from their URI"() {
+    given:
+    def resolver = new JmsDestinationResolver([
+        orders: "queue:///DEV.QUEUE.ORDERS?persistence=2",
+        prices: "topic://dev/prices"])
+    def context = Mock(JMSContext)
+    def queue = Mock(Queue)
+    def topic = Mock(Topic)
+
+    when:
+    def orders = resolver.resolve("orders", JmsDestinationType.QUEUE, context)
+    def prices = resolver.resolve("prices", JmsDestinationType.QUEUE, context)
+
+    then:
+    1 * context.createQueue("queue:///DEV.QUEUE.ORDERS?persistence=2") >> queue
+    1 * context.createTopic("topic://dev/prices") >> topic
+    orders == queue
+    prices == topic
+  }
+}
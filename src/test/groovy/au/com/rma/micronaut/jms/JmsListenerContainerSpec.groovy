@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType
+import au.com.rma.micronaut.jms.annotation.JmsDispatchMode
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.jms.JmsDestinationResolver
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextBatchHandler
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextMessageHandler
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextReactiveHandler
+import au.com.rma.micronaut.jms.jms.JmsListenerContainer
+import au.com.rma.micronaut.jms.jms.JmsListenerOptions
+import au.com.rma.micronaut.jms.jms.JmsReplySender
+import au.com.rma.micronaut.jms.jms.MessageKeyExtractor
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
+import au.com.rma.micronaut.jms.metrics.JmsMetrics
+import com.ibm.msg.client.jms.JmsQueue
+import com.ibm.msg.client.wmq.WMQConstants
+import io.micronaut.scheduling.TaskScheduler
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import javax.jms.ConnectionFactory
+import javax.jms.Destination
+import javax.jms.ExceptionListener
+import javax.jms.JMSConsumer
+import javax.jms.JMSContext
+import javax.jms.JMSException
+import javax.jms.JMSProducer
+import javax.jms.JMSRuntimeException
+import javax.jms.Message
+import javax.jms.Queue
+import javax.jms.Topic
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+class JmsListenerContainerSpec extends Specification {
+  private ConnectionFactory connectionFactory
+  private JMSContext context
+  private JMSConsumer consumer
+  private ExecutorService executorService
+  private PollingConditions conditions = new PollingConditions(timeout: 5)
+  private JmsListenerContainer container
+  private JmsReplySender replySender = new JmsReplySender()
+
+  def setup() {
+    connectionFactory = Mock(ConnectionFactory)
+    context = Mock(JMSContext)
+    consumer = Mock(JMSConsumer)
+    executorService = Executors.newCachedThreadPool()
+    context.createContext(_) >>> [Mock(JMSContext), Mock(JMSContext), Mock(JMSContext)]
+    context.createQueue("DEV.QUEUE.1") >> Mock(Queue)
+  }
+
+  def cleanup() {
+    container?.close()
+    executorService.shutdownNow()
+  }
+
+  def "verify ordered lanes keep the order of messages with the same key"() {
+    given:
+    def acknowledged = new AtomicBoolean()
+    def messages = (1..20).collect { message(it % 2 == 0 ? "even" : "odd", it, it == 20 ? acknowledged : null) }
+    consumer.receive(_) >>> [messages[0], null]
+    consumer.receiveNoWait() >>> messages.subList(1, messages.size()) + [null]
+    connectionFactory.createContext(_) >> context
+    context.createConsumer(_) >> consumer
+    def handled = new ConcurrentLinkedQueue<List>()
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.setOrdered(2, { Message message -> message.getStringProperty("key") } as MessageKeyExtractor, 100)
+    container = listener(options, { JMSContext laneContext, Message message ->
+      // the first messages are slow so a lane running its tasks concurrently would reorder them
+      int sequence = message.getIntProperty("sequence")
+      if (sequence <= 2) {
+        Thread.sleep(100)
+      }
+      handled.add([message.getStringProperty("key"), sequence, Thread.currentThread().name, laneContext])
+    } as ContextMessageHandler)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert handled.size() == 20
+      assert acknowledged.get()
+    }
+    ["odd", "even"].each { key ->
+      def lane = handled.findAll { it[0] == key }
+      assert lane*.get(1) == lane*.get(1).sort(false)
+      assert lane*.get(2).unique(false).size() == 1
+      assert lane*.get(3).unique(false).size() == 1
+    }
+  }
+
+  def "verify read ahead is only enabled on the destination of a prefetching listener"() {
+    given:
+    connectionFactory.createContext(_) >> context
+    def cached = Mock(JmsQueue)
+    def readAhead = Mock(JmsQueue)
+    def readAheadEnabled = new AtomicBoolean()
+    def cachedChanged = new AtomicBoolean()
+    readAhead.setIntProperty(WMQConstants.WMQ_READ_AHEAD_ALLOWED, WMQConstants.WMQ_READ_AHEAD_ALLOWED_ENABLED) >> {
+      readAheadEnabled.set(true)
+    }
+    cached.setIntProperty(*_) >> { cachedChanged.set(true) }
+    context.createQueue("DEV.QUEUE.2") >>> [cached, readAhead]
+    def resolver = new JmsDestinationResolver([:])
+    resolver.resolve("DEV.QUEUE.2", JmsDestinationType.QUEUE, context)
+    def consumed = new AtomicReference<Destination>()
+    context.createConsumer(_) >> { Destination destination -> consumed.set(destination); consumer }
+    consumer.receive(_) >> null
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.2"
+    options.dispatchMode = JmsDispatchMode.PULL
+    options.prefetch = 10
+    container = listener(options, { JMSContext laneContext, Message message -> } as ContextMessageHandler, resolver)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert consumed.get().is(readAhead)
+    }
+    readAheadEnabled.get()
+    !cachedChanged.get()
+    resolver.resolve("DEV.QUEUE.2", JmsDestinationType.QUEUE, context).is(cached)
+  }
+
+  def "verify a consumer that lost its connection is not reported as connected"() {
+    given:
+    connectionFactory.createContext() >>> [context] >> { throw new JMSRuntimeException("Queue manager unavailable") }
+    context.createConsumer(_) >> consumer
+    def exceptionListener = new AtomicReference<ExceptionListener>()
+    context.setExceptionListener(_) >> { ExceptionListener listener -> exceptionListener.set(listener) }
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    container = listener(options, { JMSContext listenerContext, Message message -> } as ContextMessageHandler)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert container.connectedConsumerCount == 1
+      assert exceptionListener.get() != null
+    }
+
+    when:
+    exceptionListener.get().onException(new JMSException("Connection broken"))
+
+    then:
+    container.connectedConsumerCount == 0
+    container.consumerCount == 1
+  }
+
+  def "verify failing batches are split until the failing message is backed out"() {
+    given:
+    def a = delivery("a", 1)
+    def c = delivery("c", 1)
+    def d = delivery("d", 1)
+    def poison = (1..5).collect { delivery("poison", it) }
+    connectionFactory.createContext(JMSContext.SESSION_TRANSACTED) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> [a, a, a, poison[2], poison[3], poison[4], c, null]
+    consumer.receiveNoWait() >>> [poison[0], c, d, poison[1], c, d, null]
+    def backoutQueue = Mock(Queue)
+    context.createQueue("DEV.QUEUE.BACKOUT") >> backoutQueue
+    def producer = Mock(JMSProducer)
+    context.createProducer() >> producer
+    def backedOut = new ConcurrentLinkedQueue<List>()
+    producer.send(_ as Destination, _ as Message) >> { Destination destination, Message message ->
+      backedOut.add([destination, message])
+      producer
+    }
+    def commits = new AtomicInteger()
+    def rollbacks = new AtomicInteger()
+    context.commit() >> { commits.incrementAndGet() }
+    context.rollback() >> { rollbacks.incrementAndGet() }
+    def batches = new ConcurrentLinkedQueue<List>()
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.batchSize = 4
+    options.batchDelay = Duration.ZERO
+    def configuration = new ServerConfiguration.ListenerConfiguration()
+    configuration.redeliveryDelay = Duration.ofMillis(1)
+    configuration.maxRedeliveries = 3
+    configuration.backoutDestination = "DEV.QUEUE.BACKOUT"
+    container = listener(options, { JMSContext batchContext, List<Message> messages ->
+      batches.add(messages*.JMSMessageID)
+      if (messages.any { it.JMSMessageID == "poison" }) {
+        throw new IllegalStateException("Unable to process poison message")
+      }
+    } as ContextBatchHandler, new JmsDestinationResolver([:]), configuration)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert batches.size() == 6
+      assert commits.get() == 3
+    }
+    batches as List == [["a", "poison", "c", "d"], ["a", "poison"], ["a"], ["poison", "c"], ["poison"], ["c", "d"]]
+    rollbacks.get() == 4
+    backedOut as List == [[backoutQueue, poison[4]]]
+  }
+
+  @Unroll
+  def "verify a #description topic subscription creates its consumer with #method"() {
+    given:
+    def topic = Mock(Topic)
+    def selector = "region = 'AU'"
+    def created = new CompletableFuture<String>()
+    connectionFactory.createContext() >> context
+    context.createTopic("dev/prices") >> topic
+    context.createSharedDurableConsumer(topic, "prices", selector) >> { created.complete("createSharedDurableConsumer"); consumer }
+    context.createSharedConsumer(topic, "prices", selector) >> { created.complete("createSharedConsumer"); consumer }
+    context.createDurableConsumer(topic, "prices", selector, false) >> { created.complete("createDurableConsumer"); consumer }
+    context.createConsumer(topic, selector) >> { created.complete("createConsumer"); consumer }
+
+    def options = new JmsListenerOptions()
+    options.destination = "dev/prices"
+    options.destinationType = JmsDestinationType.TOPIC
+    options.selector = selector
+    options.setSubscription("prices", durable, shared)
+    container = listener(options, { JMSContext listenerContext, Message message -> } as ContextMessageHandler)
+
+    when:
+    container.start()
+
+    then:
+    created.get(5, TimeUnit.SECONDS) == method
+
+    where:
+    description        | shared | durable | method
+    'shared durable'   | true   | true    | 'createSharedDurableConsumer'
+    'shared'           | true   | false   | 'createSharedConsumer'
+    'durable'          | false  | true    | 'createDurableConsumer'
+    'non-durable'      | false  | false   | 'createConsumer'
+  }
+
+  def "verify a pull listener acknowledges processed messages and recovers after an exception on its executor"() {
+    given:
+    def acknowledged = (1..3).collect { new AtomicBoolean() }
+    def first = delivery("first", 1, acknowledged[0])
+    def failing = delivery("failing", 1, acknowledged[1])
+    def redelivered = delivery("failing", 2, acknowledged[2])
+    connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> [first, failing, redelivered] >> null
+    def recovered = new AtomicInteger()
+    context.recover() >> { recovered.incrementAndGet() }
+    def threads = new ConcurrentLinkedQueue<String>()
+    def pullExecutor = Executors.newSingleThreadExecutor({ Runnable runnable -> new Thread(runnable, "pull-worker") })
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.dispatchMode = JmsDispatchMode.PULL
+    options.executor = pullExecutor
+    def configuration = new ServerConfiguration.ListenerConfiguration()
+    configuration.redeliveryDelay = Duration.ofMillis(1)
+    container = listener(options, { JMSContext listenerContext, Message message ->
+      threads.add(Thread.currentThread().name)
+      if (!message.JMSRedelivered && message.JMSMessageID == "failing") {
+        throw new IllegalStateException("Unable to process message")
+      }
+    } as ContextMessageHandler, new JmsDestinationResolver([:]), configuration)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert acknowledged[2].get()
+    }
+    acknowledged[0].get()
+    !acknowledged[1].get()
+    recovered.get() == 1
+    threads as Set == ["pull-worker"] as Set
+
+    cleanup:
+    container?.close()
+    pullExecutor.shutdownNow()
+  }
+
+  def "verify a pull listener backs out a message failing on its own"() {
+    given:
+    def acknowledged = new AtomicBoolean()
+    def poison = (1..3).collect { delivery("poison", it, it == 3 ? acknowledged : null) }
+    connectionFactory.createContext(_) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> poison + [null]
+    def recovered = new AtomicInteger()
+    context.recover() >> { recovered.incrementAndGet() }
+    def backoutQueue = Mock(Queue)
+    context.createQueue("DEV.QUEUE.BACKOUT") >> backoutQueue
+    def producer = Mock(JMSProducer)
+    context.createProducer() >> producer
+    def backedOut = new ConcurrentLinkedQueue<List>()
+    producer.send(_ as Destination, _ as Message) >> { Destination destination, Message message ->
+      backedOut.add([destination, message])
+      producer
+    }
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.dispatchMode = JmsDispatchMode.PULL
+    def configuration = new ServerConfiguration.ListenerConfiguration()
+    configuration.redeliveryDelay = Duration.ofMillis(1)
+    configuration.maxRedeliveries = 2
+    configuration.backoutDestination = "DEV.QUEUE.BACKOUT"
+    container = listener(options, { JMSContext listenerContext, Message message ->
+      throw new IllegalStateException("Unable to process poison message")
+    } as ContextMessageHandler, new JmsDestinationResolver([:]), configuration)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert acknowledged.get()
+    }
+    recovered.get() == 2
+    backedOut as List == [[backoutQueue, poison[2]]]
+  }
+
+  def "verify a pull listener leaves a failing message to the queue manager without a backout destination"() {
+    given:
+    def acknowledged = new AtomicBoolean()
+    def poison = (1..4).collect { delivery("poison", it, acknowledged) }
+    connectionFactory.createContext(_) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> poison >> null
+    def recovered = new AtomicInteger()
+    context.recover() >> { recovered.incrementAndGet() }
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.dispatchMode = JmsDispatchMode.PULL
+    def configuration = new ServerConfiguration.ListenerConfiguration()
+    configuration.redeliveryDelay = Duration.ofMillis(1)
+    configuration.maxRedeliveries = 2
+    container = listener(options, { JMSContext listenerContext, Message message ->
+      throw new IllegalStateException("Unable to process poison message")
+    } as ContextMessageHandler, new JmsDestinationResolver([:]), configuration)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert recovered.get() == 4
+    }
+    !acknowledged.get()
+  }
+
+  def "verify a reactive listener waits for its window to complete without polling the consumer"() {
+    given:
+    def acknowledged = new AtomicBoolean()
+    def messages = (1..3).collect { message("key", it, it == 3 ? acknowledged : null) }
+    connectionFactory.createContext(_) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> [messages[0]] >> { Thread.sleep(100); null }
+    def polls = new AtomicInteger()
+    consumer.receiveNoWait() >>> [messages[1], messages[2]] >> { polls.incrementAndGet(); null }
+    def results = new ConcurrentLinkedQueue<CompletableFuture<Object>>()
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.maxInFlight = 4
+    container = listener(options, { JMSContext listenerContext, Message message ->
+      def result = new CompletableFuture<Object>()
+      results.add(result)
+      result
+    } as ContextReactiveHandler)
+
+    when:
+    container.start()
+
+    then:
+    conditions.eventually {
+      assert results.size() == 3
+    }
+
+    when:
+    Thread.sleep(300)
+
+    then: 'the consumer waits for a completion instead of polling for messages'
+    polls.get() <= 1
+    !acknowledged.get()
+
+    when:
+    results.each { it.complete(null) }
+
+    then:
+    conditions.eventually {
+      assert acknowledged.get()
+    }
+  }
+
+  def "verify a prefetching listener acknowledges the messages it buffered once the worker completes them"() {
+    given:
+    def acknowledged = new AtomicBoolean()
+    def messages = (1..3).collect { message("key", it, it == 3 ? acknowledged : null) }
+    connectionFactory.createContext(_) >> context
+    context.createConsumer(_) >> consumer
+    consumer.receive(_) >>> [messages[0]] >> { Thread.sleep(100); null }
+    def polls = new AtomicInteger()
+    consumer.receiveNoWait() >>> [messages[1], messages[2]] >> { polls.incrementAndGet(); null }
+    def release = new CountDownLatch(1)
+    def handled = new ConcurrentLinkedQueue<Integer>()
+
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    options.dispatchMode = JmsDispatchMode.PULL
+    options.prefetch = 10
+    container = listener(options, { JMSContext laneContext, Message message ->
+      release.await()
+      handled.add(message.getIntProperty("sequence"))
+    } as ContextMessageHandler)
+
+    when:
+    container.start()
+    Thread.sleep(300)
+
+    then: 'the consumer waits for the worker instead of polling for messages'
+    polls.get() <= 1
+    !acknowledged.get()
+
+    when:
+    release.countDown()
+
+    then:
+    conditions.eventually {
+      assert acknowledged.get()
+    }
+    handled.toList() == [1, 2, 3]
+  }
+
+  private JmsListenerContainer listener(
+      JmsListenerOptions options,
+      Object handler,
+      JmsDestinationResolver resolver = new JmsDestinationResolver([:]),
+      ServerConfiguration.ListenerConfiguration configuration = new ServerConfiguration.ListenerConfiguration()) {
+    new JmsListenerContainer(
+        new NamedConnectionFactory("foo", connectionFactory),
+        resolver,
+        replySender,
+        options,
+        configuration,
+        handler,
+        executorService,
+        Mock(TaskScheduler),
+        new JmsMetrics())
+  }
+
+  private static Message message(String key, int sequence, AtomicBoolean acknowledged) {
+    [
+        getStringProperty: { String name -> name == "key" ? key : null },
+        getIntProperty: { String name -> sequence },
+        getJMSRedelivered: { false },
+        acknowledge: { acknowledged?.set(true) }
+    ] as Message
+  }
+
+  private static Message delivery(String id, int deliveryCount, AtomicBoolean acknowledged = null) {
+    [
+        getJMSMessageID: { id },
+        getJMSRedelivered: { deliveryCount > 1 },
+        propertyExists: { String name -> name == "JMSXDeliveryCount" },
+        getIntProperty: { String name -> deliveryCount },
+        acknowledge: { acknowledged?.set(true) }
+    ] as Message
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType
+import au.com.rma.micronaut.jms.jms.JmsListenerOptions
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class JmsListenerOptionsSpec extends Specification {
+
+  @Unroll
+  def "verify concurrency '#concurrency' is #min to #max consumers"() {
+    given:
+    def options = new JmsListenerOptions()
+
+    when:
+    options.concurrency = concurrency
+
+    then:
+    options.minConsumers == min
+    options.maxConsumers == max
+
+    where:
+    concurrency | min | max
+    '1'         | 1   | 1
+    '4'         | 4   | 4
+    '2-8'       | 2   | 8
+    ' 2 - 8 '   | 2   | 8
+    '3-3'       | 3   | 3
+  }
+
+  @Unroll
+  def "verify invalid concurrency '#concurrency' is rejected"() {
+    given:
+    def options = new JmsListenerOptions()
+
+    when:
+    options.concurrency = concurrency
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    concurrency << ['', 'four', '0', '-1', '8-2', '2-', '2-x', '0-4']
+  }
+
+  def "verify the batch size must be positive"() {
+    when:
+    new JmsListenerOptions().batchSize = 0
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+
+  def "verify a subscription can only be used with a topic"() {
+    given:
+    def options = new JmsListenerOptions()
+    options.destinationType = JmsDestinationType.QUEUE
+
+    when:
+    options.setSubscription("prices", true, true)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
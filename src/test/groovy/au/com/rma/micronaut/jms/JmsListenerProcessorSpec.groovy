@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.aop.JmsListenerMethodPlan
+import au.com.rma.micronaut.jms.aop.JmsListenerProcessor
+import au.com.rma.micronaut.jms.aop.JmsServerException
+import au.com.rma.micronaut.jms.binding.MessageBinderRegistry
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.conversion.ConversionHelper
+import au.com.rma.micronaut.jms.jms.JmsHelper
+import au.com.rma.micronaut.jms.jms.JmsHelper.ContextHandler
+import au.com.rma.micronaut.jms.jms.JmsReplySender
+import au.com.rma.micronaut.jms.support.StringReceiver
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micronaut.core.bind.exceptions.UnsatisfiedArgumentException
+import io.micronaut.core.convert.ConversionService
+import io.micronaut.core.type.Argument
+import io.micronaut.core.type.ReturnType
+import io.micronaut.inject.BeanDefinition
+import io.micronaut.inject.ExecutableMethod
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import spock.lang.Specification
+
+import javax.jms.JMSContext
+import javax.jms.Message
+import javax.jms.Queue
+import javax.jms.TextMessage
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class JmsListenerProcessorSpec extends Specification {
+  private JmsListenerProcessor processor = new JmsListenerProcessor(null, null, null, null)
+
+  def "verify a reactive result completes with its single value"() {
+    expect:
+    processor.toCompletionStage(new ValuesPublisher(["reply"])).toCompletableFuture().get(1, TimeUnit.SECONDS) == "reply"
+    processor.toCompletionStage(new ValuesPublisher([])).toCompletableFuture().get(1, TimeUnit.SECONDS) == null
+    processor.toCompletionStage(CompletableFuture.completedFuture("reply")).toCompletableFuture().get() == "reply"
+  }
+
+  def "verify a reactive result with more than one value fails and is cancelled"() {
+    given:
+    def publisher = new ValuesPublisher(["first", "second", "third"])
+
+    when:
+    processor.toCompletionStage(publisher).toCompletableFuture().get(1, TimeUnit.SECONDS)
+
+    then:
+    def exception = thrown(ExecutionException)
+    exception.cause instanceof JmsServerException
+    publisher.cancelled
+    publisher.requested == 2
+  }
+
+  def "verify a reactive reply is sent and committed on a pooled context"() {
+    given:
+    def jmsHelper = Mock(JmsHelper)
+    def replySender = Mock(JmsReplySender)
+    def pooled = Mock(JMSContext)
+    def reply = Mock(TextMessage)
+    def replyTo = Mock(Queue)
+    def processor = new JmsListenerProcessor(
+        null, new ConversionHelper(ConversionService.SHARED, new ObjectMapper()), jmsHelper, null)
+    jmsHelper.getReplySender("foo") >> replySender
+    pooled.createTextMessage("reply") >> reply
+
+    when:
+    processor.reply("foo", request(replyTo), "reply", null, new ServerConfiguration("foo"))
+
+    then:
+    1 * jmsHelper.withTransactedClient("foo", _ as ContextHandler) >> { String name, ContextHandler handler ->
+      handler.usingContext(pooled)
+    }
+    1 * reply.setJMSCorrelationID("1234")
+    1 * replySender.sendOnce(pooled, replyTo, reply)
+    0 * replySender.send(_, _, _)
+  }
+
+  def "verify a listener reply reuses the producer of the consumer context"() {
+    given:
+    def jmsHelper = Mock(JmsHelper)
+    def replySender = Mock(JmsReplySender)
+    def context = Mock(JMSContext)
+    def reply = Mock(TextMessage)
+    def replyTo = Mock(Queue)
+    def processor = new JmsListenerProcessor(
+        null, new ConversionHelper(ConversionService.SHARED, new ObjectMapper()), jmsHelper, null)
+    jmsHelper.getReplySender("foo") >> replySender
+    context.createTextMessage("reply") >> reply
+
+    when:
+    processor.sendReply(context, request(replyTo), "reply", null, new ServerConfiguration("foo"), false)
+
+    then:
+    1 * replySender.send(context, replyTo, reply)
+    0 * replySender.sendOnce(_, _, _)
+  }
+
+  def "verify a listener argument annotated with @Body is bound to the message body"() {
+    given:
+    def definition = Class.forName(StringReceiver.package.name + '.$StringReceiverDefinition')
+        .newInstance() as BeanDefinition<?>
+    def method = definition.executableMethods.find { it.methodName == "onMessage" }
+    def plan = new JmsListenerMethodPlan(method, new StringReceiver(), messageBinderRegistry())
+    def message = Mock(TextMessage)
+    message.getBody(String) >> "hello"
+
+    expect:
+    plan.bind(message) == ["hello"] as Object[]
+  }
+
+  def "verify a listener argument without a binding annotation fails every message"() {
+    given:
+    def method = Mock(ExecutableMethod)
+    method.getArguments() >> ([Argument.of(String, "text")] as Argument[])
+    method.getReturnType() >> Mock(ReturnType) { getType() >> void }
+    def plan = new JmsListenerMethodPlan(method, new Object(), messageBinderRegistry())
+
+    when:
+    plan.bind(Mock(TextMessage))
+
+    then:
+    thrown(UnsatisfiedArgumentException)
+  }
+
+  private static MessageBinderRegistry messageBinderRegistry() {
+    new MessageBinderRegistry(new ConversionHelper(ConversionService.SHARED, new ObjectMapper()))
+  }
+
+  private Message request(Queue replyTo) {
+    def message = Mock(Message)
+    message.getJMSReplyTo() >> replyTo
+    message.getJMSCorrelationID() >> "1234"
+    message
+  }
+
+  /**
+   * Emits its values as they are requested.
+   */
+  private static class ValuesPublisher implements Publisher<Object> {
+    private final List<Object> values
+    private int next
+    long requested
+    boolean cancelled
+
+    ValuesPublisher(List<Object> values) {
+      this.values = values
+    }
+
+    @Override
+    void subscribe(Subscriber<? super Object> subscriber) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        void request(long count) {
+          requested += count
+          while (!cancelled && next < requested && next < values.size()) {
+            subscriber.onNext(values[next++])
+          }
+          if (!cancelled && next == values.size()) {
+            next++
+            subscriber.onComplete()
+          }
+        }
+
+        @Override
+        void cancel() {
+          cancelled = true
+        }
+      })
+    }
+  }
+}
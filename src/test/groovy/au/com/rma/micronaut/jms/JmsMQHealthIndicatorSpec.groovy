@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.health.JmsMQHealthIndicator
+import au.com.rma.micronaut.jms.jms.JmsHelper
+import au.com.rma.micronaut.jms.jms.JmsListenerContainer
+import au.com.rma.micronaut.jms.jms.JmsListenerOptions
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
+import io.micronaut.health.HealthStatus
+import io.micronaut.scheduling.TaskScheduler
+import spock.lang.Specification
+
+import javax.jms.ConnectionFactory
+import javax.jms.JMSRuntimeException
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+
+class JmsMQHealthIndicatorSpec extends Specification {
+  private JmsHelper jmsHelper
+  private ExecutorService executorService
+  private JmsMQHealthIndicator indicator
+
+  def setup() {
+    jmsHelper = Mock(JmsHelper)
+    executorService = Mock(ExecutorService)
+    executorService.submit(_ as Runnable) >> { Runnable probe ->
+      probe.run()
+      null
+    }
+    indicator = new JmsMQHealthIndicator(
+        [new NamedConnectionFactory("foo", Mock(ConnectionFactory))], jmsHelper, Mock(TaskScheduler), executorService,
+        Duration.ofSeconds(10), Duration.ofSeconds(30))
+  }
+
+  def "verify the connection is up when the probe succeeds and every listener is attached"() {
+    given:
+    jmsHelper.probe("foo") >> 1_000_000L
+    jmsHelper.getListeners() >> [listener(2)]
+
+    when:
+    indicator.probe()
+    def details = indicator.getHealthInformation()
+
+    then:
+    indicator.healthStatus == HealthStatus.UP
+    details.foo.status == HealthStatus.UP.name
+    details.foo["latency-ms"] == 1
+    details.foo.listeners[0].attached
+    details.foo["detached-listeners"] == 0
+  }
+
+  def "verify a listener without attached consumers is reported without taking the connection down"() {
+    given:
+    jmsHelper.probe("foo") >> 1_000_000L
+    jmsHelper.getListeners() >> [listener(2), listener(0)]
+
+    when:
+    indicator.probe()
+    def details = indicator.getHealthInformation()
+
+    then:
+    indicator.healthStatus == HealthStatus.UP
+    details.foo.status == HealthStatus.UP.name
+    details.foo["detached-listeners"] == 1
+    details.foo.listeners*.attached == [true, false]
+  }
+
+  def "verify a failed probe is reported with its error"() {
+    given:
+    jmsHelper.probe("foo") >> { throw new JMSRuntimeException("MQRC_HOST_NOT_AVAILABLE") }
+    jmsHelper.getListeners() >> []
+
+    when:
+    indicator.probe()
+    def details = indicator.getHealthInformation()
+
+    then:
+    indicator.healthStatus == HealthStatus.DOWN
+    details.foo.error == "MQRC_HOST_NOT_AVAILABLE"
+  }
+
+  def "verify a connection that has not been probed is unknown"() {
+    given:
+    jmsHelper.getListeners() >> []
+
+    when:
+    def details = indicator.getHealthInformation()
+
+    then:
+    indicator.healthStatus == HealthStatus.UNKNOWN
+    details.foo.status == HealthStatus.UNKNOWN.name
+  }
+
+  private JmsListenerContainer listener(int connectedConsumers) {
+    def listener = Mock(JmsListenerContainer)
+    def options = new JmsListenerOptions()
+    options.destination = "DEV.QUEUE.1"
+    listener.getConnectionName() >> "foo"
+    listener.getOptions() >> options
+    listener.getConsumerCount() >> 2
+    listener.getConnectedConsumerCount() >> connectedConsumers
+    listener
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.jms.JmsGroupInputStream
+import au.com.rma.micronaut.jms.jms.JmsMessageGroups
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.jms.BytesMessage
+import javax.jms.JMSConsumer
+import javax.jms.JMSContext
+import javax.jms.Queue
+import javax.jms.TextMessage
+import java.time.Duration
+
+class JmsMessageGroupsSpec extends Specification {
+  private static final int CHUNK_SIZE = 16
+
+  private JMSContext context = Mock(JMSContext)
+  private Queue destination = Mock(Queue)
+
+  def setup() {
+    context.createBytesMessage() >> { bytesMessage() }
+  }
+
+  @Unroll
+  def "verify a stream of #size bytes is sent as #count messages and read back whole"() {
+    given:
+    def body = new byte[size]
+    new Random(size).nextBytes(body)
+    def sent = []
+    def consumer = Mock(JMSConsumer)
+
+    when:
+    def result = JmsMessageGroups.send(context, new ByteArrayInputStream(body), CHUNK_SIZE, { sent << it })
+
+    then:
+    result == count
+    sent.size() == count
+    sent.collect { it.getIntProperty(JmsMessageGroups.GROUP_SEQ) } == (1..count).toList()
+    sent.collect { it.getBooleanProperty(JmsMessageGroups.LAST_IN_GROUP) } == [false] * (count - 1) + [true]
+    sent.collect { it.getStringProperty(JmsMessageGroups.GROUP_ID) }.unique().size() == 1
+
+    when:
+    consumer.receive(_) >>> sent.drop(1)
+    def stream = new JmsGroupInputStream(context, sent[0], Duration.ofSeconds(1))
+    def read = stream.bytes
+    stream.close()
+
+    then:
+    read == body
+    (count > 1 ? 1 : 0) * context.createConsumer(destination, JmsMessageGroups.groupSelector(sent[0].getStringProperty(JmsMessageGroups.GROUP_ID))) >> consumer
+
+    where:
+    size               | count
+    CHUNK_SIZE * 2 + 8 | 3
+    CHUNK_SIZE * 2     | 2
+    CHUNK_SIZE - 1     | 1
+    0                  | 1
+  }
+
+  def "verify a message that is not part of a group is read as a stream on its own"() {
+    given:
+    def message = Mock(TextMessage)
+    message.propertyExists(_) >> false
+    message.getBody(String) >> "hello"
+
+    when:
+    def stream = new JmsGroupInputStream(context, message, Duration.ofSeconds(1))
+
+    then:
+    stream.text == "hello"
+    JmsMessageGroups.isLast(message)
+    0 * context.createConsumer(_, _)
+  }
+
+  def "verify a message missing from the group fails the stream"() {
+    given:
+    def sent = []
+    JmsMessageGroups.send(context, new ByteArrayInputStream(new byte[CHUNK_SIZE * 3]), CHUNK_SIZE, { sent << it })
+    def consumer = Mock(JMSConsumer)
+    context.createConsumer(destination, _ as String) >> consumer
+    consumer.receive(_) >> sent[2]
+
+    when:
+    new JmsGroupInputStream(context, sent[0], Duration.ofSeconds(1)).bytes
+
+    then:
+    def exception = thrown(IOException)
+    exception.message.contains("Expected message 2")
+  }
+
+  def "verify the first in group selector also matches messages without a group sequence"() {
+    expect:
+    JmsMessageGroups.FIRST_IN_GROUP_SELECTOR == "(JMSXGroupSeq = 1 OR JMSXGroupSeq IS NULL)"
+  }
+
+  /**
+   * A bytes message holding its body and properties, as the message sent by the queue manager would.
+   */
+  private BytesMessage bytesMessage() {
+    def body = new ByteArrayOutputStream()
+    def properties = [:]
+    def message = Mock(BytesMessage)
+    message.getJMSDestination() >> destination
+    message.writeBytes(_ as byte[]) >> { arguments -> body.write(arguments[0] as byte[]) }
+    message.setStringProperty(_, _) >> { String name, String value -> properties[name] = value }
+    message.setIntProperty(_, _) >> { String name, int value -> properties[name] = value }
+    message.setBooleanProperty(_, _) >> { String name, boolean value -> properties[name] = value }
+    message.propertyExists(_) >> { String name -> properties.containsKey(name) }
+    message.getStringProperty(_) >> { String name -> properties[name] }
+    message.getIntProperty(_) >> { String name -> properties[name] }
+    message.getBooleanProperty(_) >> { String name -> properties[name] }
+    message.getBody(byte[]) >> { body.toByteArray() }
+    message
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ReconnectConfiguration
+import au.com.rma.micronaut.jms.jms.JmsReconnectCoordinator
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class JmsReconnectCoordinatorSpec extends Specification {
+  private ReconnectConfiguration configuration
+
+  def setup() {
+    configuration = new ReconnectConfiguration()
+    configuration.initialDelay = Duration.ofMillis(100)
+    configuration.maxDelay = Duration.ofSeconds(1)
+    configuration.multiplier = 2
+    configuration.jitter = 0
+  }
+
+  def "verify the backoff grows exponentially up to the maximum delay"() {
+    given:
+    def coordinator = new JmsReconnectCoordinator(configuration)
+
+    expect:
+    coordinator.backoff(0) == Duration.ofMillis(100)
+    coordinator.backoff(1) == Duration.ofMillis(200)
+    coordinator.backoff(3) == Duration.ofMillis(800)
+    coordinator.backoff(10) == Duration.ofSeconds(1)
+  }
+
+  def "verify failures while a retry is scheduled do not extend the backoff"() {
+    given:
+    configuration.initialDelay = Duration.ofSeconds(10)
+    configuration.maxDelay = Duration.ofMinutes(1)
+    def coordinator = new JmsReconnectCoordinator(configuration)
+
+    when:
+    coordinator.failed()
+    coordinator.failed()
+    coordinator.failed()
+
+    then:
+    coordinator.delay > Duration.ofSeconds(9)
+    coordinator.delay <= Duration.ofSeconds(10)
+  }
+
+  @Timeout(5)
+  def "verify a reconnection releases the waiting consumers"() {
+    given:
+    configuration.initialDelay = Duration.ofMinutes(1)
+    configuration.maxDelay = Duration.ofMinutes(1)
+    def coordinator = new JmsReconnectCoordinator(configuration)
+    coordinator.failed()
+
+    when:
+    def waiting = CompletableFuture.runAsync { coordinator.await() }
+    Thread.sleep(100)
+    def outage = coordinator.connected()
+    waiting.get(2, TimeUnit.SECONDS)
+
+    then:
+    outage > 0
+    coordinator.delay == Duration.ZERO
+  }
+
+  @Timeout(5)
+  def "verify startup permits bound first connections only"() {
+    given:
+    def coordinator = new JmsReconnectCoordinator(configuration, 1)
+    coordinator.beginStartup()
+
+    when:
+    def second = CompletableFuture.runAsync { coordinator.beginStartup() }
+    Thread.sleep(100)
+
+    then:
+    !second.done
+
+    when:
+    coordinator.endStartup()
+    second.get(2, TimeUnit.SECONDS)
+
+    then:
+    second.done
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.annotation.JmsDestinationType
+import au.com.rma.micronaut.jms.aop.JmsClientException
+import au.com.rma.micronaut.jms.jms.JmsDestinationResolver
+import au.com.rma.micronaut.jms.jms.JmsReplyCorrelator
+import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
+import au.com.rma.micronaut.jms.metrics.JmsMetrics
+import io.micronaut.scheduling.TaskScheduler
+import spock.lang.Specification
+
+import javax.jms.ConnectionFactory
+import javax.jms.JMSConsumer
+import javax.jms.JMSContext
+import javax.jms.Message
+import javax.jms.Queue
+import javax.jms.TemporaryQueue
+import java.time.Duration
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ScheduledFuture
+
+class JmsReplyCorrelatorSpec extends Specification {
+  private ConnectionFactory connectionFactory
+  private JMSContext context
+  private JMSContext requestContext
+  private JMSConsumer requestConsumer
+  private TaskScheduler taskScheduler
+  private Runnable expiry
+
+  def setup() {
+    connectionFactory = Mock(ConnectionFactory)
+    context = Mock(JMSContext)
+    taskScheduler = Mock(TaskScheduler)
+    connectionFactory.createContext() >> context
+    context.createConsumer(_) >> Mock(JMSConsumer)
+    context.createConsumer(_, _) >> Mock(JMSConsumer)
+    requestContext = Mock(JMSContext)
+    requestConsumer = Mock(JMSConsumer)
+    context.createContext(JMSContext.AUTO_ACKNOWLEDGE) >> requestContext
+    requestContext.createConsumer(_, _) >> requestConsumer
+    taskScheduler.schedule(_ as Duration, _ as Runnable) >> { Duration delay, Runnable task ->
+      expiry = task
+      Mock(ScheduledFuture)
+    }
+  }
+
+  def "verify replies on a named queue are received by one consumer selecting the correlator prefix"() {
+    given:
+    def queue = Mock(Queue)
+    def replyConsumer = Mock(JMSConsumer)
+    context.createQueue("DEV.QUEUE.REPLY") >> queue
+    def correlator = new JmsReplyCorrelator(
+        new NamedConnectionFactory("foo", connectionFactory), new JmsDestinationResolver([:]), "DEV.QUEUE.REPLY", JmsDestinationType.QUEUE, taskScheduler, new JmsMetrics())
+
+    when:
+    correlator.start()
+
+    then:
+    1 * context.createConsumer(queue, { it ==~ /JMSCorrelationID LIKE '[0-9a-f]{32}-%'/ }) >> replyConsumer
+    1 * replyConsumer.setMessageListener(correlator)
+
+    when:
+    def firstId = correlator.newCorrelationId()
+    def secondId = correlator.newCorrelationId()
+    def firstReply = reply(firstId)
+    def secondReply = reply(secondId)
+    def first = correlator.register(firstId, Duration.ofSeconds(1))
+    def second = correlator.register(secondId, Duration.ofSeconds(1))
+    correlator.onMessage(secondReply)
+    correlator.onMessage(firstReply)
+
+    then:
+    0 * context.createContext(_)
+    0 * context.createConsumer(*_)
+    firstId != secondId
+    firstId.startsWith(secondId.substring(0, 33))
+    correlator.replyDestination == queue
+    first.join().is(firstReply)
+    second.join().is(secondReply)
+    correlator.pendingCount == 0
+  }
+
+  def "verify a reply with a caller's correlation id is received by a consumer selecting it"() {
+    given:
+    def queue = Mock(Queue)
+    context.createQueue("DEV.QUEUE.REPLY") >> queue
+    def correlator = new JmsReplyCorrelator(
+        new NamedConnectionFactory("foo", connectionFactory), new JmsDestinationResolver([:]), "DEV.QUEUE.REPLY", JmsDestinationType.QUEUE, taskScheduler, new JmsMetrics())
+    correlator.start()
+
+    def callerReply = reply("1234")
+
+    when:
+    def future = correlator.register("1234", Duration.ofSeconds(1))
+    correlator.onMessage(callerReply)
+
+    then:
+    1 * requestContext.createConsumer(queue, "JMSCorrelationID='1234'") >> requestConsumer
+    1 * requestConsumer.setMessageListener(correlator)
+    future.join().is(callerReply)
+  }
+
+  def "verify a blank destination uses a temporary queue"() {
+    given:
+    def temporaryQueue = Mock(TemporaryQueue)
+    def correlator = new JmsReplyCorrelator(
+        new NamedConnectionFactory("foo", connectionFactory), new JmsDestinationResolver([:]), "", JmsDestinationType.QUEUE, taskScheduler, new JmsMetrics())
+
+    when:
+    correlator.start()
+
+    then:
+    1 * context.createTemporaryQueue() >> temporaryQueue
+    correlator.replyDestination == temporaryQueue
+  }
+
+  def "verify unanswered requests time out"() {
+    given:
+    def correlator = new JmsReplyCorrelator(
+        new NamedConnectionFactory("foo", connectionFactory), new JmsDestinationResolver([:]), "DEV.QUEUE.REPLY", JmsDestinationType.QUEUE, taskScheduler, new JmsMetrics())
+    correlator.start()
+
+    when:
+    def future = correlator.register("1234", Duration.ofSeconds(1))
+    expiry.run()
+    future.join()
+
+    then:
+    def exception = thrown(CompletionException)
+    exception.cause instanceof JmsClientException
+    correlator.pendingCount == 0
+  }
+
+  def "verify closing fails the requests waiting for a reply"() {
+    given:
+    def correlator = new JmsReplyCorrelator(
+        new NamedConnectionFactory("foo", connectionFactory), new JmsDestinationResolver([:]), "", JmsDestinationType.QUEUE, taskScheduler, new JmsMetrics())
+    context.createTemporaryQueue() >> Mock(TemporaryQueue)
+    correlator.start()
+    def future = correlator.register("1234", Duration.ofSeconds(1))
+
+    when:
+    correlator.close()
+    future.join()
+
+    then:
+    def exception = thrown(CompletionException)
+    exception.cause instanceof JmsClientException
+    correlator.pendingCount == 0
+  }
+
+  private Message reply(String correlationId) {
+    def reply = Mock(Message)
+    reply.getJMSCorrelationID() >> correlationId
+    reply
+  }
+}
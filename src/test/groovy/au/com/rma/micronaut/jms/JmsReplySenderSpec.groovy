@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.jms.JmsReplySender
+import spock.lang.Specification
+
+import javax.jms.JMSContext
+import javax.jms.JMSProducer
+import javax.jms.Message
+import javax.jms.Queue
+
+class JmsReplySenderSpec extends Specification {
+  private JmsReplySender replySender = new JmsReplySender()
+
+  def "verify a listener context reuses its producer until it is released"() {
+    given:
+    def context = Mock(JMSContext)
+    def producer = Mock(JMSProducer)
+    def replyTo = Mock(Queue)
+
+    when:
+    replySender.send(context, replyTo, Mock(Message))
+    replySender.send(context, replyTo, Mock(Message))
+
+    then:
+    1 * context.createProducer() >> producer
+    2 * producer.send(replyTo, _ as Message)
+    replySender.producerCount == 1
+
+    when:
+    replySender.release(context)
+    replySender.send(context, replyTo, Mock(Message))
+
+    then:
+    1 * context.createProducer() >> producer
+    1 * producer.send(replyTo, _ as Message)
+  }
+
+  def "verify a reply on a context that is not owned by a listener uses a producer of its own"() {
+    given:
+    def context = Mock(JMSContext)
+    def replyTo = Mock(Queue)
+    def reply = Mock(Message)
+    def first = Mock(JMSProducer)
+    def second = Mock(JMSProducer)
+
+    when:
+    replySender.sendOnce(context, replyTo, reply)
+    replySender.sendOnce(context, replyTo, reply)
+
+    then:
+    2 * context.createProducer() >>> [first, second]
+    1 * first.send(replyTo, reply)
+    1 * second.send(replyTo, reply)
+    replySender.producerCount == 0
+  }
+}
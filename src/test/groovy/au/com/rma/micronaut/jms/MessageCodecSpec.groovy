@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.aop.JmsClientMethodPlan
+import au.com.rma.micronaut.jms.binding.JmsClientPropertyBinder
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration
+import au.com.rma.micronaut.jms.conversion.CborMessageCodec
+import au.com.rma.micronaut.jms.conversion.ConversionException
+import au.com.rma.micronaut.jms.conversion.ConversionHelper
+import au.com.rma.micronaut.jms.conversion.MessageCodec
+import au.com.rma.micronaut.jms.conversion.SmileMessageCodec
+import au.com.rma.micronaut.jms.metrics.JmsMetrics
+import au.com.rma.micronaut.jms.support.CodecSender
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import io.micronaut.core.convert.ConversionService
+import io.micronaut.inject.BeanDefinition
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.jms.BytesMessage
+import javax.jms.JMSContext
+import javax.jms.TextMessage
+
+class MessageCodecSpec extends Specification {
+  private ConversionHelper conversionHelper = new ConversionHelper(ConversionService.SHARED, new ObjectMapper(),
+      new JmsMetrics(), [new CborMessageCodec(), new SmileMessageCodec()], [])
+
+  @Unroll
+  def "verify a body is encoded and decoded by the codec selected by its content type #contentType"() {
+    given:
+    def context = Mock(JMSContext)
+    def message = Mock(BytesMessage)
+    byte[] written = null
+    context.createBytesMessage() >> message
+    message.writeBytes(_ as byte[]) >> { arguments -> written = arguments[0] as byte[] }
+    message.getBody(byte[]) >> { written }
+    message.getStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY) >> contentType
+
+    when:
+    def body = conversionHelper.serializeBody([name: "widget", count: 2], contentType, false)
+    conversionHelper.createMessage(context, body, contentType)
+
+    then:
+    1 * message.setStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY, contentType)
+    written == new ObjectMapper(factory).writeValueAsBytes([name: "widget", count: 2])
+    conversionHelper.readBody(message, Map) == [name: "widget", count: 2]
+
+    where:
+    contentType                        | factory
+    CborMessageCodec.CONTENT_TYPE  | new CBORFactory()
+    SmileMessageCodec.CONTENT_TYPE | new SmileFactory()
+  }
+
+  def "verify a JSON content type is sent as text without a content type property"() {
+    given:
+    def context = Mock(JMSContext)
+    def message = Mock(TextMessage)
+
+    when:
+    def body = conversionHelper.serializeBody([name: "widget"], MessageCodec.JSON, false)
+    conversionHelper.createMessage(context, body, null)
+
+    then:
+    body == '{"name":"widget"}'
+    1 * context.createTextMessage('{"name":"widget"}') >> message
+    0 * message.setStringProperty(MessageCodec.CONTENT_TYPE_PROPERTY, _)
+  }
+
+  def "verify a message without a content type property is read as JSON"() {
+    given:
+    def message = Mock(TextMessage)
+    message.getBody(String) >> '{"name":"widget"}'
+
+    expect:
+    conversionHelper.readBody(message, Map) == [name: "widget"]
+  }
+
+  def "verify sending with a content type that has no codec fails"() {
+    when:
+    conversionHelper.serializeBody([name: "widget"], "application/x-protobuf", false)
+
+    then:
+    thrown(ConversionException)
+  }
+
+  def "verify @JmsContentType takes precedence over the content type configured for the destination"() {
+    given:
+    def configuration = new ServerConfiguration("admin")
+    configuration.contentTypes = ["DEV.QUEUE.1": SmileMessageCodec.CONTENT_TYPE, "DEV.QUEUE.2": SmileMessageCodec.CONTENT_TYPE]
+    def definition = Class.forName(CodecSender.package.name + '.$CodecSender$InterceptedDefinition')
+        .newInstance() as BeanDefinition<?>
+    def plans = definition.executableMethods.collectEntries { method ->
+      [(method.methodName): new JmsClientMethodPlan(method, new JmsClientPropertyBinder(conversionHelper), { configuration })]
+    }
+
+    expect:
+    plans.sendAnnotated.contentType == CborMessageCodec.CONTENT_TYPE
+    plans.sendConfigured.contentType == SmileMessageCodec.CONTENT_TYPE
+    plans.sendJson.contentType == null
+  }
+}
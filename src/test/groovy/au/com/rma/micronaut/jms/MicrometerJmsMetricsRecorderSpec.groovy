@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Richard Allwood
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package au.com.rma.micronaut.jms
+
+import au.com.rma.micronaut.jms.metrics.JmsMetrics
+import au.com.rma.micronaut.jms.metrics.MicrometerJmsMetricsRecorder
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class MicrometerJmsMetricsRecorderSpec extends Specification {
+  private SimpleMeterRegistry registry = new SimpleMeterRegistry()
+  private JmsMetrics metrics = new JmsMetrics(new MicrometerJmsMetricsRecorder(registry))
+
+  def "verify sends are recorded on one timer per connection, destination and result"() {
+    when:
+    metrics.send("foo", "QUEUE.1", 1_000, true)
+    metrics.send("foo", "QUEUE.1", 3_000, true)
+    metrics.send("foo", "QUEUE.1", 5_000, false)
+
+    then:
+    def success = registry.get(JmsMetrics.CLIENT_SEND).tags("result", "success").timer()
+    success.count() == 2
+    success.totalTime(TimeUnit.NANOSECONDS) == 4_000
+    registry.get(JmsMetrics.CLIENT_SEND).tags("result", "failure").timer().count() == 1
+    registry.meters.size() == 2
+  }
+
+  def "verify a listener gauge is removed from the registry once it is closed"() {
+    given:
+    def remove = metrics.consumers("foo", "QUEUE.1", { 3 })
+
+    expect:
+    registry.get(JmsMetrics.LISTENER_CONSUMERS).gauge().value() == 3
+
+    when:
+    remove.run()
+
+    then:
+    registry.find(JmsMetrics.LISTENER_CONSUMERS).gauge() == null
+  }
+}
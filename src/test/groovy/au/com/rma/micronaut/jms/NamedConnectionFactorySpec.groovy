@@ -22,12 +22,17 @@
  */
 package au.com.rma.micronaut.jms
 
+import au.com.rma.micronaut.jms.configuration.ServerConfiguration.ReconnectConfiguration
+import au.com.rma.micronaut.jms.jms.JmsReconnectCoordinator
 import au.com.rma.micronaut.jms.jms.NamedConnectionFactory
 import spock.lang.Specification
 
 import javax.jms.Connection
 import javax.jms.ConnectionFactory
+import javax.jms.ExceptionListener
+import javax.jms.IllegalStateRuntimeException
 import javax.jms.JMSContext
+import javax.jms.JMSException
 
 import static java.lang.Integer.MAX_VALUE
 
@@ -119,4 +124,122 @@ class NamedConnectionFactorySpec extends Specification {
     1 * connectionFactory.createContext(MAX_VALUE) >> context
     returnedContext == context
   }
+
+  def "verify shared connections create contexts as sessions of one connection"() {
+    given:
+    def sharedFactory = new NamedConnectionFactory("foo", connectionFactory, 1)
+    def root = Mock(JMSContext)
+    def session = Mock(JMSContext)
+
+    when:
+    def first = sharedFactory.createContext(JMSContext.SESSION_TRANSACTED)
+    def second = sharedFactory.createContext()
+    first.close()
+
+    then:
+    1 * connectionFactory.createContext() >> root
+    1 * root.createContext(JMSContext.SESSION_TRANSACTED) >> session
+    1 * root.createContext(JMSContext.AUTO_ACKNOWLEDGE) >> Mock(JMSContext)
+    1 * session.close()
+    0 * root.close()
+    sharedFactory.sharedSessions == 1
+  }
+
+  def "verify a failed shared connection is closed once its last context is closed"() {
+    given:
+    def sharedFactory = new NamedConnectionFactory("foo", connectionFactory, 1)
+    def failed = Mock(JMSContext)
+    def replacement = Mock(JMSContext)
+    ExceptionListener connectionListener = null
+    def sessionListener = Mock(ExceptionListener)
+    connectionFactory.createContext() >>> [failed, replacement]
+    failed.setExceptionListener(_) >> { ExceptionListener listener -> connectionListener = listener }
+    failed.createContext(_) >> Mock(JMSContext)
+    replacement.createContext(_) >> Mock(JMSContext)
+
+    when:
+    def first = sharedFactory.createContext()
+    first.exceptionListener = sessionListener
+    connectionListener.onException(new JMSException("MQRC_CONNECTION_BROKEN"))
+    def second = sharedFactory.createContext()
+
+    then:
+    1 * sessionListener.onException(_ as JMSException)
+    0 * failed.close()
+    sharedFactory.sharedSessions == 2
+
+    when:
+    first.close()
+
+    then:
+    1 * failed.close()
+    0 * replacement.close()
+    sharedFactory.sharedSessions == 1
+
+    cleanup:
+    second.close()
+  }
+
+  def "verify contexts created from a shared context are counted sessions"() {
+    given:
+    def sharedFactory = new NamedConnectionFactory("foo", connectionFactory, 1)
+    def root = Mock(JMSContext)
+    connectionFactory.createContext() >> root
+    root.createContext(_) >> Mock(JMSContext)
+    def listener = Mock(ExceptionListener)
+
+    when:
+    def context = sharedFactory.createContext()
+    def lane = context.createContext(JMSContext.CLIENT_ACKNOWLEDGE)
+    lane.exceptionListener = listener
+
+    then:
+    sharedFactory.sharedSessions == 2
+    0 * root.setExceptionListener(listener)
+    lane.exceptionListener == listener
+
+    when:
+    lane.close()
+    lane.close()
+
+    then:
+    sharedFactory.sharedSessions == 1
+  }
+
+  def "verify a shared context can't be stopped"() {
+    given:
+    def sharedFactory = new NamedConnectionFactory("foo", connectionFactory, 1)
+    def root = Mock(JMSContext)
+    connectionFactory.createContext() >> root
+    root.createContext(_) >> Mock(JMSContext)
+
+    when:
+    sharedFactory.createContext().stop()
+
+    then:
+    thrown(IllegalStateRuntimeException)
+    0 * root.stop()
+  }
+
+  def "verify the client id is set once on each shared connection"() {
+    given:
+    def sharedFactory = new NamedConnectionFactory("foo", connectionFactory, 1, "app-1", new JmsReconnectCoordinator(new ReconnectConfiguration()))
+    def root = Mock(JMSContext)
+    root.createContext(_) >> Mock(JMSContext)
+
+    when:
+    def first = sharedFactory.createContext()
+    sharedFactory.createContext()
+
+    then:
+    1 * connectionFactory.createContext() >> root
+    1 * root.setClientID("app-1")
+
+    when:
+    first.clientID = "other"
+
+    then:
+    thrown(IllegalStateRuntimeException)
+    0 * root.setClientID(_)
+  }
 }
@@ -0,0 +1,16 @@
+package au.com.rma.micronaut.jms.support
+
+import au.com.rma.micronaut.jms.annotation.JmsClient
+import au.com.rma.micronaut.jms.annotation.JmsDestination
+import org.reactivestreams.Publisher
+
+import java.util.concurrent.CompletableFuture
+
+@JmsClient("admin")
+interface AsyncSender {
+  @JmsDestination("DEV.QUEUE.1")
+  CompletableFuture<Void> sendAsync(String message)
+
+  @JmsDestination("DEV.QUEUE.1")
+  Publisher<Void> sendReactive(String message)
+}
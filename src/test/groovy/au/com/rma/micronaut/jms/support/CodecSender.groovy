@@ -0,0 +1,19 @@
+package au.com.rma.micronaut.jms.support
+
+import au.com.rma.micronaut.jms.annotation.JmsClient
+import au.com.rma.micronaut.jms.annotation.JmsContentType
+import au.com.rma.micronaut.jms.annotation.JmsDestination
+import io.micronaut.messaging.annotation.Body
+
+@JmsClient("admin")
+interface CodecSender {
+  @JmsContentType("application/cbor")
+  @JmsDestination("DEV.QUEUE.1")
+  void sendAnnotated(@Body Map<String, Object> message)
+
+  @JmsDestination("DEV.QUEUE.2")
+  void sendConfigured(@Body Map<String, Object> message)
+
+  @JmsDestination("DEV.QUEUE.3")
+  void sendJson(@Body Map<String, Object> message)
+}
@@ -0,0 +1,12 @@
+package au.com.rma.micronaut.jms.support
+
+import au.com.rma.micronaut.jms.annotation.JmsClient
+import au.com.rma.micronaut.jms.annotation.JmsDestination
+import au.com.rma.micronaut.jms.annotation.JmsProperty
+import io.micronaut.messaging.annotation.Body
+
+@JmsClient("admin")
+interface PropertySender {
+  @JmsDestination("DEV.QUEUE.1")
+  void send(@JmsProperty(name = "correlationId") String correlationId, @Body String message)
+}